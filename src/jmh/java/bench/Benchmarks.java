@@ -0,0 +1,42 @@
+package bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmark jar. Takes the usual JMH command line and always
+ * adds the GC profiler, so every result comes with its allocation rate
+ * (gc.alloc.rate.norm is bytes allocated per operation).
+ *
+ *   mvn -P bench package
+ *   java -jar target/benchmarks.jar                      all benchmarks
+ *   java -jar target/benchmarks.jar Tokenizer -f 1       a subset
+ *   java -jar target/benchmarks.jar -jvmArgsAppend -Djack.corpus=DIR
+ */
+public final class Benchmarks {
+    private Benchmarks() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if (commandLine.shouldHelp()) {
+            commandLine.showHelp();
+            return;
+        }
+        OptionsBuilder options = new OptionsBuilder();
+        options.parent(commandLine);
+        boolean hasGcProfiler = commandLine.getProfilers().stream()
+            .anyMatch(profiler -> profiler.getKlass().equals(GCProfiler.class.getName()) || profiler.getKlass().equals("gc"));
+        if (!hasGcProfiler) {
+            options.addProfiler(GCProfiler.class);
+        }
+        Runner runner = new Runner(options.build());
+        if (commandLine.shouldList()) {
+            runner.list();
+        } else {
+            runner.run();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compiles one bundled class, in memory and from a .jack file to a .vm file.
+ * The Square classes are the ones whose expected output is in compareFiles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ClassCompileBenchmark {
+    @Param({"Square/Main.jack", "Square/Square.jack", "Square/SquareGame.jack", "ConvertToBin/Main.jack"})
+    public String source;
+
+    private String text;
+    private long bytes;
+    private Object compiler;
+    private Object options;
+    private File inputFile;
+    private File outputFile;
+
+    @Setup
+    public void load() throws Throwable {
+        text = Corpus.bundled(source);
+        bytes = text.getBytes(StandardCharsets.UTF_8).length;
+        options = Jack.options();
+        compiler = Jack.compiler(options);
+        try {
+            inputFile = File.createTempFile("bench", ".jack");
+            outputFile = new File(inputFile.getPath().replace(".jack", ".vm"));
+            inputFile.deleteOnExit();
+            outputFile.deleteOnExit();
+            Files.write(inputFile.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Benchmark
+    public CharSequence compileInMemory(Throughput throughput) throws Throwable {
+        throughput.addBytes(bytes);
+        return Jack.compile(compiler, text);
+    }
+
+    @Benchmark
+    public void compileFile(Throughput throughput) throws Throwable {
+        throughput.addBytes(bytes);
+        Jack.compileFile(inputFile, outputFile, options);
+    }
+}
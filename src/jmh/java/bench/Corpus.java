@@ -0,0 +1,108 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Jack sources the benchmarks run on.
+ * By default these are the sample programs bundled under corpus/ in the benchmark
+ * jar. Setting the system property jack.corpus to a directory uses every .jack file
+ * in it instead, for example a program written by JackProgramGenerator; pass it to the
+ * forked JVMs with -jvmArgsAppend -Djack.corpus=DIR.
+ */
+final class Corpus {
+    /** Bundled sources, by path under corpus/. */
+    static final String[] BUNDLED = {
+        "Square/Main.jack",
+        "Square/Square.jack",
+        "Square/SquareGame.jack",
+        "ConvertToBin/Main.jack",
+    };
+
+    private Corpus() {
+    }
+
+    /**
+     * Returns the benchmark sources by name, in a stable order.
+     */
+    static Map<String, String> load() {
+        String directory = System.getProperty("jack.corpus");
+        return directory != null ? loadDirectory(new File(directory)) : loadBundled();
+    }
+
+    /**
+     * Returns one bundled source.
+     */
+    static String bundled(String path) {
+        try (InputStream in = Corpus.class.getResourceAsStream("/corpus/" + path)) {
+            if (in == null) {
+                throw new IllegalArgumentException("No bundled source: " + path);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the total size of the given sources in UTF-8 bytes.
+     */
+    static long bytes(Iterable<String> sources) {
+        long bytes = 0;
+        for (String source : sources) {
+            bytes += source.getBytes(StandardCharsets.UTF_8).length;
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes the given sources as .jack files into a new temporary directory,
+     * with '/' in names flattened to '_'.
+     */
+    static File writeTo(Map<String, String> sources) {
+        try {
+            File directory = Files.createTempDirectory("jack-bench").toFile();
+            directory.deleteOnExit();
+            for (Map.Entry<String, String> entry : sources.entrySet()) {
+                File file = new File(directory, entry.getKey().replace('/', '_'));
+                Files.write(file.toPath(), entry.getValue().getBytes(StandardCharsets.UTF_8));
+                file.deleteOnExit();
+            }
+            return directory;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Map<String, String> loadBundled() {
+        Map<String, String> sources = new LinkedHashMap<>();
+        for (String path : BUNDLED) {
+            sources.put(path, bundled(path));
+        }
+        return sources;
+    }
+
+    private static Map<String, String> loadDirectory(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".jack"));
+        if (files == null || files.length == 0) {
+            throw new IllegalArgumentException("No .jack files in " + directory);
+        }
+        Arrays.sort(files);
+        Map<String, String> sources = new LinkedHashMap<>();
+        for (File file : files) {
+            try {
+                sources.put(file.getName(), new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return sources;
+    }
+}
@@ -0,0 +1,108 @@
+package bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compiles the whole corpus the way JackCompiler compiles a directory: one engine
+ * per class, either one class after another or spread over every core.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DirectoryCompileBenchmark {
+    @Param({"sequential", "parallel"})
+    public String mode;
+
+    private Map<String, String> sources;
+    private long bytes;
+    private int jobs;
+    private Object compiler;
+    private Object options;
+    private File[] inputFiles;
+    private File[] outputFiles;
+    private ExecutorService pool;
+
+    @Setup
+    public void load() throws Throwable {
+        sources = Corpus.load();
+        bytes = Corpus.bytes(sources.values());
+        jobs = mode.equals("parallel") ? Runtime.getRuntime().availableProcessors() : 1;
+        options = Jack.options();
+        compiler = Jack.compiler(options);
+
+        File directory = Corpus.writeTo(sources);
+        inputFiles = directory.listFiles((dir, name) -> name.endsWith(".jack"));
+        outputFiles = new File[inputFiles.length];
+        for (int i = 0; i < inputFiles.length; i++) {
+            outputFiles[i] = new File(inputFiles[i].getPath().replace(".jack", ".vm"));
+            outputFiles[i].deleteOnExit();
+        }
+        // Same pool type JackCompiler uses for --jobs
+        pool = Executors.newWorkStealingPool(jobs);
+    }
+
+    @TearDown
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    @Benchmark
+    public Map<String, CharSequence> compileInMemory(Throughput throughput) throws Throwable {
+        throughput.addBytes(bytes);
+        return Jack.compileAll(compiler, sources, jobs);
+    }
+
+    @Benchmark
+    public void compileFiles(Throughput throughput) throws Throwable {
+        throughput.addBytes(bytes);
+        if (jobs == 1) {
+            for (int i = 0; i < inputFiles.length; i++) {
+                Jack.compileFile(inputFiles[i], outputFiles[i], options);
+            }
+            return;
+        }
+        List<Future<Void>> results = new ArrayList<>(inputFiles.length);
+        for (int i = 0; i < inputFiles.length; i++) {
+            File input = inputFiles[i];
+            File output = outputFiles[i];
+            Callable<Void> task = () -> {
+                try {
+                    Jack.compileFile(input, output, options);
+                } catch (Exception | Error e) {
+                    throw e;
+                } catch (Throwable t) {
+                    throw new IllegalStateException(t);
+                }
+                return null;
+            };
+            results.add(pool.submit(task));
+        }
+        for (Future<Void> result : results) {
+            result.get();
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package bench;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Map;
+
+/**
+ * Bridge to the compiler classes, which live in the unnamed package and so cannot
+ * be referenced from benchmark code by name. Every entry point is resolved once into
+ * a static final MethodHandle, which the JIT inlines like a direct call.
+ */
+final class Jack {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    private static final Class<?> TOKENIZER = type("JackTokenizer");
+    private static final Class<?> OPTIONS = type("CompilerOptions");
+    private static final Class<?> COMPILER = type("InMemoryCompiler");
+    private static final Class<?> ENGINE = type("CompilationEngine");
+    private static final Class<?> WRITER = type("VMWriter");
+    private static final Class<?> CODE = type("VMCode");
+    private static final Class<?> KEYWORD = type("KeywordType");
+
+    private static final MethodHandle FROM_SOURCE = staticMethod(TOKENIZER, "fromSource",
+        MethodType.methodType(TOKENIZER, CharSequence.class, String.class));
+    private static final MethodHandle HAS_MORE_TOKENS = virtualMethod(TOKENIZER, "hasMoreTokens",
+        MethodType.methodType(boolean.class));
+    private static final MethodHandle ADVANCE = virtualMethod(TOKENIZER, "advance",
+        MethodType.methodType(void.class));
+    private static final MethodHandle NEW_OPTIONS = constructor(OPTIONS, MethodType.methodType(void.class));
+    private static final MethodHandle SET_DIRECT_OUTPUT = virtualMethod(OPTIONS, "setDirectOutput",
+        MethodType.methodType(OPTIONS, boolean.class));
+    private static final MethodHandle SET_SYNTAX_TREE = virtualMethod(OPTIONS, "setSyntaxTree",
+        MethodType.methodType(OPTIONS, boolean.class));
+    private static final MethodHandle NEW_COMPILER = constructor(COMPILER, MethodType.methodType(void.class, OPTIONS));
+    private static final MethodHandle COMPILE = virtualMethod(COMPILER, "compile",
+        MethodType.methodType(CharSequence.class, CharSequence.class));
+    private static final MethodHandle COMPILE_ALL = virtualMethod(COMPILER, "compileAll",
+        MethodType.methodType(Map.class, Map.class, int.class));
+    private static final MethodHandle NEW_ENGINE = constructor(ENGINE,
+        MethodType.methodType(void.class, File.class, File.class, OPTIONS));
+    private static final MethodHandle COMPILE_CLASS = virtualMethod(ENGINE, "compileClass",
+        MethodType.methodType(void.class));
+    private static final MethodHandle NEW_FILE_WRITER = constructor(WRITER,
+        MethodType.methodType(void.class, String.class, boolean.class));
+    private static final MethodHandle NEW_MEMORY_WRITER = constructor(WRITER, MethodType.methodType(void.class));
+    private static final MethodHandle WRITER_CODE = virtualMethod(WRITER, "code", MethodType.methodType(CODE));
+    private static final MethodHandle WRITER_CLOSE = virtualMethod(WRITER, "close", MethodType.methodType(void.class));
+    private static final MethodHandle NEW_MEMORY_ENGINE = constructor(ENGINE,
+        MethodType.methodType(void.class, TOKENIZER, WRITER, OPTIONS));
+    private static final MethodHandle CODE_SIZE = virtualMethod(CODE, "size", MethodType.methodType(int.class));
+    private static final MethodHandle CODE_ADD = virtualMethod(CODE, "add",
+        MethodType.methodType(void.class, CODE, int.class));
+    private static final MethodHandle KEYWORD_LOOKUP = staticMethod(KEYWORD, "lookup",
+        MethodType.methodType(KEYWORD, char[].class, int.class, int.class));
+
+    private Jack() {
+    }
+
+    /** Returns the number of tokens in the given source. */
+    static int countTokens(CharSequence source) throws Throwable {
+        Object tokenizer = (Object) FROM_SOURCE.invokeExact(source, "bench");
+        int tokens = 0;
+        while ((boolean) HAS_MORE_TOKENS.invokeExact(tokenizer)) {
+            ADVANCE.invokeExact(tokenizer);
+            tokens++;
+        }
+        return tokens;
+    }
+
+    /** Returns new default CompilerOptions. */
+    static Object options() throws Throwable {
+        return (Object) NEW_OPTIONS.invokeExact();
+    }
+
+    /** Returns new default CompilerOptions with direct output switched on or off. */
+    static Object options(boolean directOutput) throws Throwable {
+        Object options = options();
+        Object ignored = (Object) SET_DIRECT_OUTPUT.invokeExact(options, directOutput);
+        return options;
+    }
+
+    /** Returns new default CompilerOptions that compile through a syntax tree or directly. */
+    static Object syntaxTreeOptions(boolean syntaxTree) throws Throwable {
+        Object options = options();
+        Object ignored = (Object) SET_SYNTAX_TREE.invokeExact(options, syntaxTree);
+        return options;
+    }
+
+    /** Returns an InMemoryCompiler with the given options. */
+    static Object compiler(Object options) throws Throwable {
+        return (Object) NEW_COMPILER.invokeExact(options);
+    }
+
+    /** Compiles one class in memory and returns its VM code. */
+    static CharSequence compile(Object compiler, CharSequence source) throws Throwable {
+        return (CharSequence) COMPILE.invokeExact(compiler, source);
+    }
+
+    /** Compiles named sources in memory with up to the given number of threads. */
+    @SuppressWarnings("unchecked")
+    static Map<String, CharSequence> compileAll(Object compiler, Map<String, String> sources, int jobs) throws Throwable {
+        return (Map<String, CharSequence>) (Map<?, ?>) COMPILE_ALL.invokeExact(compiler, (Map) sources, jobs);
+    }
+
+    /** Compiles a .jack file into a .vm file, as JackCompiler does. */
+    static void compileFile(File input, File output, Object options) throws Throwable {
+        Object engine = (Object) NEW_ENGINE.invokeExact(input, output, options);
+        COMPILE_CLASS.invokeExact(engine);
+    }
+
+    /** Compiles one class into an in-memory VMCode, without rendering it. */
+    static Object compileToCode(CharSequence source, Object options) throws Throwable {
+        Object tokenizer = (Object) FROM_SOURCE.invokeExact(source, "bench");
+        Object writer = (Object) NEW_MEMORY_WRITER.invokeExact();
+        Object engine = (Object) NEW_MEMORY_ENGINE.invokeExact(tokenizer, writer, options);
+        COMPILE_CLASS.invokeExact(engine);
+        return (Object) WRITER_CODE.invokeExact(writer);
+    }
+
+    /** Writes the given VMCode to a .vm file through a VMWriter in the given output mode. */
+    static void writeFile(Object code, String outputFile, boolean directOutput) throws Throwable {
+        Object writer = (Object) NEW_FILE_WRITER.invokeExact(outputFile, directOutput);
+        Object target = (Object) WRITER_CODE.invokeExact(writer);
+        int size = (int) CODE_SIZE.invokeExact(code);
+        for (int i = 0; i < size; i++) {
+            CODE_ADD.invokeExact(target, code, i);
+        }
+        WRITER_CLOSE.invokeExact(writer);
+    }
+
+    /** Returns the keyword spelled by buffer[offset, offset + length), or null. */
+    static Object lookupKeyword(char[] buffer, int offset, int length) throws Throwable {
+        return (Object) KEYWORD_LOOKUP.invokeExact(buffer, offset, length);
+    }
+
+    /** Returns the KeywordType enum class. */
+    static Class<?> keywordType() {
+        return KEYWORD;
+    }
+
+    private static Class<?> type(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle staticMethod(Class<?> owner, String name, MethodType type) {
+        try {
+            return generic(LOOKUP.findStatic(owner, name, type));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle virtualMethod(Class<?> owner, String name, MethodType type) {
+        try {
+            return generic(LOOKUP.findVirtual(owner, name, type));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle constructor(Class<?> owner, MethodType type) {
+        try {
+            return generic(LOOKUP.findConstructor(owner, type));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // Replaces compiler types in the handle's signature with Object, so callers can use invokeExact
+    private static MethodHandle generic(MethodHandle handle) {
+        MethodType type = handle.type();
+        for (int i = 0; i < type.parameterCount(); i++) {
+            if (isCompilerType(type.parameterType(i))) {
+                type = type.changeParameterType(i, Object.class);
+            }
+        }
+        if (isCompilerType(type.returnType())) {
+            type = type.changeReturnType(Object.class);
+        }
+        return handle.asType(type);
+    }
+
+    private static boolean isCompilerType(Class<?> type) {
+        return !type.isPrimitive() && !type.isArray() && type.getPackageName().isEmpty();
+    }
+}
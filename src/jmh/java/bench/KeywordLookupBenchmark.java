@@ -0,0 +1,87 @@
+package bench;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Classifies every word of the corpus as keyword or identifier, comparing the
+ * perfect-hash KeywordType.lookup with the valueOf(toUpperCase()) approach it
+ * replaced, which builds two Strings per word and throws for every identifier.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class KeywordLookupBenchmark {
+    private static final Pattern WORD = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private char[] buffer;
+    private int[] offsets;
+    private int[] lengths;
+    private Class<?> keywordType;
+
+    @Setup
+    public void load() {
+        StringBuilder words = new StringBuilder();
+        int count = 0;
+        for (String source : Corpus.load().values()) {
+            Matcher matcher = WORD.matcher(source);
+            while (matcher.find()) {
+                words.append(matcher.group()).append(' ');
+                count++;
+            }
+        }
+        buffer = words.toString().toCharArray();
+        offsets = new int[count];
+        lengths = new int[count];
+        int word = 0;
+        for (int i = 0; i < buffer.length; i++) {
+            int start = i;
+            while (buffer[i] != ' ') i++;
+            offsets[word] = start;
+            lengths[word] = i - start;
+            word++;
+        }
+        keywordType = Jack.keywordType();
+    }
+
+    @Benchmark
+    public int perfectHash() throws Throwable {
+        int keywords = 0;
+        for (int i = 0; i < offsets.length; i++) {
+            if (Jack.lookupKeyword(buffer, offsets[i], lengths[i]) != null) keywords++;
+        }
+        return keywords;
+    }
+
+    @Benchmark
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public int upperCaseValueOf() {
+        int keywords = 0;
+        for (int i = 0; i < offsets.length; i++) {
+            String name = new String(buffer, offsets[i], lengths[i]);
+            try {
+                Enum.valueOf((Class) keywordType, name.toUpperCase(Locale.ROOT));
+                keywords++;
+            } catch (IllegalArgumentException e) {
+                // Identifier
+            }
+        }
+        return keywords;
+    }
+}
@@ -0,0 +1,66 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writes the VM code of the largest corpus class to a file, through the default
+ * BufferedWriter path and through the direct-buffer FileChannel path (--nio).
+ * Both modes copy the precompiled instructions into a fresh VMWriter first, so
+ * the difference between them is the rendering and the write.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class OutputBenchmark {
+    @Param({"writer", "nio"})
+    public String output;
+
+    private Object code;
+    private boolean directOutput;
+    private String outputPath;
+    private long bytes;
+
+    @Setup
+    public void load() throws Throwable {
+        String largest = "";
+        for (Map.Entry<String, String> entry : Corpus.load().entrySet()) {
+            if (entry.getValue().length() > largest.length()) largest = entry.getValue();
+        }
+        code = Jack.compileToCode(largest, Jack.options());
+        directOutput = output.equals("nio");
+        try {
+            File outputFile = File.createTempFile("bench", ".vm");
+            outputFile.deleteOnExit();
+            outputPath = outputFile.getPath();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Jack.writeFile(code, outputPath, directOutput);
+        bytes = new File(outputPath).length();
+    }
+
+    @Benchmark
+    public void write(Throughput throughput) throws Throwable {
+        throughput.addBytes(bytes);
+        Jack.writeFile(code, outputPath, directOutput);
+    }
+}
@@ -0,0 +1,49 @@
+package bench;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compiles the whole corpus in memory on one thread, generating code while parsing
+ * ("direct") or from a syntax tree built first ("tree"), to measure what the extra
+ * pass costs. Run it on a large corpus with -Djack.corpus, see Corpus.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SyntaxTreeBenchmark {
+    @Param({"direct", "tree"})
+    public String mode;
+
+    private Map<String, String> sources;
+    private long bytes;
+    private Object compiler;
+
+    @Setup
+    public void load() throws Throwable {
+        sources = Corpus.load();
+        bytes = Corpus.bytes(sources.values());
+        compiler = Jack.compiler(Jack.syntaxTreeOptions(mode.equals("tree")));
+    }
+
+    @Benchmark
+    public Map<String, CharSequence> compileInMemory(Throughput throughput) throws Throwable {
+        throughput.addBytes(bytes);
+        return Jack.compileAll(compiler, sources, 1);
+    }
+}
@@ -0,0 +1,30 @@
+package bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Input processed per benchmark thread, reported by JMH as a rate next to ops/s.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Throughput {
+    private long bytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        bytes = 0;
+    }
+
+    void addBytes(long count) {
+        bytes += count;
+    }
+
+    /** Source kilobytes processed; reported as KB/s. */
+    public double kilobytes() {
+        return bytes / 1024.0;
+    }
+}
@@ -0,0 +1,38 @@
+package bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Tokens and input processed per benchmark thread, reported by JMH as rates next to ops/s.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class TokenThroughput {
+    private long tokens;
+    private long bytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        tokens = 0;
+        bytes = 0;
+    }
+
+    void add(long tokenCount, long byteCount) {
+        tokens += tokenCount;
+        bytes += byteCount;
+    }
+
+    /** Tokens produced; reported as tokens/s. */
+    public long tokens() {
+        return tokens;
+    }
+
+    /** Source kilobytes processed; reported as KB/s. */
+    public double kilobytes() {
+        return bytes / 1024.0;
+    }
+}
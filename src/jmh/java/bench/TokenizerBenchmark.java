@@ -0,0 +1,56 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Tokenizes the whole corpus, on one thread and on every core at once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class TokenizerBenchmark {
+    private String[] sources;
+    private long bytes;
+
+    @Setup
+    public void load() {
+        Map<String, String> corpus = Corpus.load();
+        List<String> texts = new ArrayList<>(corpus.values());
+        sources = texts.toArray(new String[0]);
+        bytes = Corpus.bytes(texts);
+    }
+
+    @Benchmark
+    public int tokenize(TokenThroughput throughput) throws Throwable {
+        int tokens = 0;
+        for (String source : sources) {
+            tokens += Jack.countTokens(source);
+        }
+        throughput.add(tokens, bytes);
+        return tokens;
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public int tokenizeParallel(TokenThroughput throughput) throws Throwable {
+        return tokenize(throughput);
+    }
+}
@@ -0,0 +1,214 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Compiles every .jack entry of a zip archive into the .vm entries of another
+ * archive, without extracting anything to disk. The input is opened through the
+ * zip FileSystem provider and its entries are compiled in memory in parallel,
+ * a few per worker ahead of the entry being written so that memory stays bounded
+ * however large the archive; the output is written through a ZipOutputStream,
+ * which, unlike the zip file system, lets the compression level be chosen.
+ */
+public class ArchiveCompiler {
+    private static final int BUFFER_SIZE = 1 << 16;
+    // Entries compiled ahead of the one being written, per worker; bounds the VMCode held at once
+    private static final int ENTRIES_AHEAD_PER_JOB = 4;
+
+    private final CompilerOptions options;
+    private final int jobs;
+    private final boolean flatten;
+    private final int compressionLevel;
+
+    /**
+     * Creates an archive compiler. If flatten is true every .vm entry is put at the
+     * root of the output archive, otherwise the input's directory structure is
+     * mirrored. The compression level is 0 to 9, or Deflater.DEFAULT_COMPRESSION.
+     */
+    public ArchiveCompiler(CompilerOptions options, int jobs, boolean flatten, int compressionLevel) {
+        if (compressionLevel != Deflater.DEFAULT_COMPRESSION && (compressionLevel < 0 || compressionLevel > 9)) {
+            throw new IllegalArgumentException("Invalid compression level: " + compressionLevel);
+        }
+        this.options = options;
+        this.jobs = jobs;
+        this.flatten = flatten;
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Compiles the .jack entries of the input archive, in path order, into a new
+     * output archive, which replaces any existing file only once every entry has
+     * compiled. The output must not be the input archive itself. Returns the number
+     * of classes compiled.
+     */
+    public int compile(Path inputArchive, Path outputArchive) throws IOException {
+        return compile(inputArchive, outputArchive, null);
+    }
+
+    /**
+     * Compiles the .jack entries of the input archive like compile(Path, Path), but
+     * if failures is not null an entry that fails to compile is left out of the
+     * output archive and its diagnostic added to failures instead of being thrown.
+     * Returns the number of classes compiled.
+     */
+    public int compile(Path inputArchive, Path outputArchive, List<Diagnostic> failures) throws IOException {
+        // Moving the finished output into place would replace the sources it was compiled from
+        if (Files.exists(outputArchive) && Files.isSameFile(inputArchive, outputArchive)) {
+            throw new IOException("The output archive " + outputArchive + " is the input archive");
+        }
+        try (FileSystem zip = FileSystems.newFileSystem(inputArchive)) {
+            List<Path> sources = jackEntries(zip);
+            List<String> names = outputNames(sources);
+            Path temp = outputArchive.resolveSibling(outputArchive.getFileName() + ".tmp");
+            int compiled;
+            try {
+                try (OutputStream out = Files.newOutputStream(temp)) {
+                    compiled = write(sources, names, out, failures);
+                }
+                moveIntoPlace(temp, outputArchive);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            return compiled;
+        }
+    }
+
+    private static List<Path> jackEntries(FileSystem zip) throws IOException {
+        List<Path> sources = new ArrayList<>();
+        for (Path root : zip.getRootDirectories()) {
+            try (Stream<Path> entries = Files.walk(root)) {
+                sources.addAll(entries
+                    .filter(path -> Files.isRegularFile(path) && path.toString().endsWith(".jack"))
+                    .collect(Collectors.toList()));
+            }
+        }
+        sources.sort(null);
+        return sources;
+    }
+
+    // Returns the output entry name of every source, in the same order
+    private List<String> outputNames(List<Path> sources) throws IOException {
+        List<String> names = new ArrayList<>(sources.size());
+        Map<String, Path> owners = new HashMap<>();
+        for (Path source : sources) {
+            String path = flatten ? source.getFileName().toString() : source.getRoot().relativize(source).toString();
+            String name = path.substring(0, path.length() - ".jack".length()) + ".vm";
+            Path previous = owners.put(name, source);
+            if (previous != null) {
+                throw new IOException("Both " + previous + " and " + source + " compile to " + name);
+            }
+            names.add(name);
+        }
+        return names;
+    }
+
+    private int write(List<Path> sources, List<String> names, OutputStream target, List<Diagnostic> failures)
+            throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(target);
+        zip.setLevel(compressionLevel);
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        // Every entry gets its own engine, so entries compile independently of each other
+        int workers = Math.max(1, Math.min(jobs, sources.size()));
+        ExecutorService pool = Executors.newWorkStealingPool(workers);
+        CompileStats statistics = options.getStatistics();
+        try {
+            // Entries are written in path order as soon as each one is compiled, and only
+            // a window of entries past the one being written is compiled ahead of it
+            Deque<Future<VMCode>> results = new ArrayDeque<>();
+            int window = workers * ENTRIES_AHEAD_PER_JOB;
+            int submitted = 0;
+            int failed = 0;
+            for (int i = 0; i < sources.size(); i++) {
+                while (submitted < sources.size() && submitted <= i + window) {
+                    Path source = sources.get(submitted++);
+                    results.add(pool.submit(() -> compileEntry(source)));
+                }
+                VMCode code;
+                try {
+                    code = JackCompiler.await(results.poll());
+                } catch (IOException | RuntimeException e) {
+                    if (failures == null) throw e;
+                    failures.add(Diagnostic.of(sources.get(i).toString(), e));
+                    failed++;
+                    continue;
+                }
+                long start = System.nanoTime();
+                ZipEntry entry = new ZipEntry(names.get(i));
+                entry.setLastModifiedTime(Files.getLastModifiedTime(sources.get(i)));
+                zip.putNextEntry(entry);
+                buffer = encode(code, buffer);
+                zip.write(buffer.array(), 0, buffer.limit());
+                zip.closeEntry();
+
+                // The entry was compiled in memory, so its statistics are missing the write
+                FileStats compiledEntry = statistics != null ? statistics.remove(sources.get(i).toString()) : null;
+                if (compiledEntry != null) {
+                    statistics.add(compiledEntry.withOutput(code.size(), entry.getCompressedSize(),
+                        System.nanoTime() - start));
+                }
+            }
+            zip.finish();
+            zip.flush();
+            return sources.size() - failed;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Renders the code as UTF-8 into the buffer, or into a larger one if it does not fit
+    private static ByteBuffer encode(VMCode code, ByteBuffer buffer) {
+        while (true) {
+            buffer.clear();
+            try {
+                code.encodeTo(buffer);
+                buffer.flip();
+                return buffer;
+            } catch (BufferOverflowException e) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+    }
+
+    private VMCode compileEntry(Path source) throws IOException {
+        String name = source.toString();
+        try {
+            ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(source));
+            VMWriter writer = new VMWriter();
+            new CompilationEngine(JackTokenizer.fromBytes(bytes, name), writer, options).compileClass();
+            return writer.code();
+        } catch (CompileError e) {
+            throw e;  // Already names the entry, as do the engine's and the file system's IOExceptions
+        } catch (RuntimeException e) {
+            throw new IllegalStateException(name + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static void moveIntoPlace(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
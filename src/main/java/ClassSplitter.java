@@ -0,0 +1,172 @@
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Splits a stream holding several Jack classes one after another into the source
+ * of each class, without tokenizing it. A class ends at the '}' that brings the
+ * brace depth back to zero; braces inside comments and string constants are
+ * ignored. Each class is returned as soon as its closing brace has been read, so
+ * a class can be compiled while the rest of the stream is still arriving.
+ * Unbalanced braces are reported as a CompileError located in the whole stream.
+ */
+public class ClassSplitter {
+    private static final int BUFFER_SIZE = 8192;
+
+    // Lexical states
+    private static final int CODE = 0;
+    private static final int SLASH = 1;          // '/' seen in code, may start a comment
+    private static final int LINE_COMMENT = 2;
+    private static final int BLOCK_COMMENT = 3;
+    private static final int BLOCK_STAR = 4;     // '*' seen in a block comment, may end it
+    private static final int STRING = 5;
+
+    private final Reader in;
+    private final String sourceName;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    private StringBuilder current = new StringBuilder();
+    private int state = CODE;
+    private int depth;
+    private int line = 1;
+    private int column;          // of the character last read
+    private int startLine;       // line of the current class's first code character, 0 if none yet
+    private int startColumn;
+    private int textLine = 1;    // line on which the current text begins
+    private int returnedLine;    // textLine of the text last returned by next
+
+    /**
+     * Creates a splitter over the given Reader, which is read on demand and not closed.
+     * Errors name the input sourceName.
+     */
+    public ClassSplitter(Reader in, String sourceName) {
+        this.in = in;
+        this.sourceName = sourceName;
+    }
+
+    /**
+     * Returns the source of the next class, including any comments before it, or
+     * null once the input holds nothing but whitespace and comments.
+     * Blocks only until the class's closing brace has been read.
+     */
+    public String next() throws IOException {
+        while (true) {
+            if (position == limit) {
+                limit = in.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit < 0) {
+                    limit = 0;
+                    return endOfInput();
+                }
+            }
+            char c = buffer[position++];
+            current.append(c);
+            column = c == '\n' ? 0 : column + 1;
+            if (accept(c)) {
+                return take();
+            }
+        }
+    }
+
+    /**
+     * Returns the line of the input on which the text last returned by next begins,
+     * so that positions within that text can be reported relative to the whole input.
+     */
+    public int startLine() {
+        return returnedLine;
+    }
+
+    // Returns whether c closes a class
+    private boolean accept(char c) {
+        if (c == '\n') {
+            line++;
+        }
+        switch (state) {
+            case SLASH:
+                if (c == '/') {
+                    state = LINE_COMMENT;
+                    return false;
+                }
+                if (c == '*') {
+                    state = BLOCK_COMMENT;
+                    return false;
+                }
+                // A division; the '/' itself is code
+                markCode();
+                state = CODE;
+                return accept(c == '\n' ? unreadLine() : c);
+            case LINE_COMMENT:
+                if (c == '\n') state = CODE;
+                return false;
+            case BLOCK_COMMENT:
+                if (c == '*') state = BLOCK_STAR;
+                return false;
+            case BLOCK_STAR:
+                state = c == '/' ? CODE : c == '*' ? BLOCK_STAR : BLOCK_COMMENT;
+                return false;
+            case STRING:
+                if (c == '"' || c == '\n') state = CODE;
+                return false;
+            default:
+                break;
+        }
+        if (Character.isWhitespace(c)) {
+            return false;
+        }
+        if (c == '/') {
+            state = SLASH;
+            return false;
+        }
+        markCode();
+        switch (c) {
+            case '"':
+                state = STRING;
+                return false;
+            case '{':
+                depth++;
+                return false;
+            case '}':
+                if (depth == 0) {
+                    throw new CompileError(new Diagnostic(sourceName, line, column, "Unmatched '}'"));
+                }
+                return --depth == 0;
+            default:
+                return false;
+        }
+    }
+
+    // Undoes the line count of a newline that is about to be accepted again
+    private char unreadLine() {
+        line--;
+        return '\n';
+    }
+
+    private void markCode() {
+        if (startLine == 0) {
+            startLine = line;
+            startColumn = column;
+        }
+    }
+
+    private String endOfInput() {
+        if (depth > 0) {
+            throw new CompileError(new Diagnostic(sourceName, startLine, startColumn,
+                "Unexpected end of input: the class starting here has no closing '}'"));
+        }
+        if (startLine == 0) {
+            return null;  // Only whitespace and comments left
+        }
+        // Code without a class body; let the engine report what is wrong with it
+        return take();
+    }
+
+    private String take() {
+        String source = current.toString();
+        current = new StringBuilder();
+        returnedLine = textLine;
+        textLine = line;
+        startLine = 0;
+        return source;
+    }
+}
@@ -0,0 +1,532 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Emits the VM code of Jack constructs into a VMWriter, applying constant folding,
+ * strength reduction and string literal pooling as configured. CompilationEngine
+ * calls it while it parses, in direct mode; in syntax tree mode generate walks a
+ * whole parsed class instead. Both produce the same code.
+ */
+public class CodeGenerator {
+    // Marks a code range that does not push a compile-time constant
+    private static final int NOT_CONSTANT = Integer.MIN_VALUE;
+
+    // Longest instruction sequence a multiplication by a constant is expanded into
+    private static final int MAX_REDUCED_LENGTH = 16;
+
+    private static final SymbolKind[] SYMBOL_KINDS = SymbolKind.values();
+    private static final KeywordType[] KEYWORDS = KeywordType.values();
+
+    private final VMWriter vmWriter;
+    private final SymbolTable symbolTable;
+    private final boolean constantFolding;
+    private final boolean strengthReduction;
+    private final boolean literalPooling;
+    private final StringPool sharedStringPool;
+    private final Map<String, Integer> literalSlots;  // Pooled literal -> static index
+    private String className;
+    private int labelCounter;
+    private SyntaxTree tree;
+
+    /**
+     * Creates a generator that writes to the given writer and resolves names in the given table.
+     */
+    public CodeGenerator(VMWriter vmWriter, SymbolTable symbolTable, CompilerOptions options) {
+        this.vmWriter = vmWriter;
+        this.symbolTable = symbolTable;
+        constantFolding = options.isConstantFolding();
+        strengthReduction = options.isStrengthReduction();
+        literalPooling = options.isLiteralPooling();
+        sharedStringPool = options.getSharedStringPool();
+        literalSlots = new HashMap<>();
+    }
+
+    /**
+     * Sets the class whose code is generated, which qualifies labels and calls.
+     */
+    public void setClassName(String className) {
+        this.className = className;
+    }
+
+    /**
+     * Returns a label that is unique within the class.
+     */
+    public String newLabel() {
+        return className + "_" + labelCounter++;
+    }
+
+    /**
+     * Writes a subroutine's function command and the prologue that sets up "this"
+     * for methods and allocates the object for constructors.
+     */
+    public void writeSubroutineEntry(String functionName, KeywordType subroutineType) {
+        vmWriter.writeFunction(functionName, symbolTable.varCount(SymbolKind.VAR));
+        if (subroutineType == KeywordType.METHOD) {
+            vmWriter.writePush("argument", 0);
+            vmWriter.writePop("pointer", 0);
+        } else if (subroutineType == KeywordType.CONSTRUCTOR) {
+            vmWriter.writePush("constant", symbolTable.varCount(SymbolKind.FIELD));
+            vmWriter.writeCall("Memory.alloc", 1);
+            vmWriter.writePop("pointer", 0);
+        }
+    }
+
+    /**
+     * Writes "left operator right", whose operands were emitted at [leftStart, rightStart)
+     * and from rightStart on, folding or reducing it where enabled.
+     */
+    public void writeBinary(char operator, int leftStart, int rightStart) {
+        if (constantFolding && foldBinary(operator, leftStart, rightStart)) {
+            return;
+        }
+        if (strengthReduction && (operator == '*' || operator == '/') && reduceStrength(operator, leftStart, rightStart)) {
+            return;
+        }
+
+        switch (operator) {
+            case '+': vmWriter.writeArithmetic("add"); break;
+            case '-': vmWriter.writeArithmetic("sub"); break;
+            case '*': vmWriter.writeCall("Math.multiply", 2); break;
+            case '/': vmWriter.writeCall("Math.divide", 2); break;
+            case '&': vmWriter.writeArithmetic("and"); break;
+            case '|': vmWriter.writeArithmetic("or"); break;
+            case '<': vmWriter.writeArithmetic("lt"); break;
+            case '>': vmWriter.writeArithmetic("gt"); break;
+            case '=': vmWriter.writeArithmetic("eq"); break;
+        }
+    }
+
+    /**
+     * Writes a '-' or '~' applied to the operand emitted from operandStart on,
+     * folding it if the operand is a constant and folding is enabled.
+     */
+    public void writeUnary(char operator, int operandStart) {
+        int value = constantFolding ? constantValue(operandStart, vmWriter.code().size()) : NOT_CONSTANT;
+        if (value != NOT_CONSTANT) {
+            writeConstant(operandStart, operator == '-' ? -value : ~value);
+        } else if (operator == '-') {
+            vmWriter.writeArithmetic("neg");
+        } else {
+            vmWriter.writeArithmetic("not");
+        }
+    }
+
+    /**
+     * Writes a string constant, through the whole-program pool, the class's literal
+     * statics or String.new, depending on the options.
+     */
+    public void writeString(String value) {
+        if (sharedStringPool != null) {
+            vmWriter.writeCall(sharedStringPool.functionFor(value), 0);
+        } else if (literalPooling) {
+            writePooledString(value);
+        } else {
+            vmWriter.writeString(value);
+        }
+    }
+
+    /**
+     * Generates the code of the class held in the given tree. Class and subroutine
+     * variables are defined in the symbol table as their declarations are reached,
+     * in the order the direct mode defines them.
+     */
+    public void generate(SyntaxTree tree) {
+        this.tree = tree;
+        setClassName(tree.name(SyntaxTree.ROOT));
+        for (int node = tree.firstChild(SyntaxTree.ROOT); node != SyntaxTree.NONE; node = tree.nextSibling(node)) {
+            if (tree.kind(node) == NodeKind.CLASS_VAR) {
+                symbolTable.define(tree.name(node), tree.type(node), SYMBOL_KINDS[tree.value(node)]);
+            } else {
+                generateSubroutine(node);
+            }
+        }
+    }
+
+    private void generateSubroutine(int node) {
+        CompileSubroutineEvent event = new CompileSubroutineEvent();
+        event.begin();
+        int firstInstruction = vmWriter.code().size();
+        symbolTable.reset();
+
+        KeywordType subroutineType = KEYWORDS[tree.value(node)];
+        if (subroutineType == KeywordType.METHOD) {
+            symbolTable.define("this", className, SymbolKind.ARG);
+        }
+        int child = tree.firstChild(node);
+        for (; tree.kind(child) == NodeKind.PARAMETER; child = tree.nextSibling(child)) {
+            symbolTable.define(tree.name(child), tree.type(child), SymbolKind.ARG);
+        }
+        for (; tree.kind(child) == NodeKind.LOCAL; child = tree.nextSibling(child)) {
+            symbolTable.define(tree.name(child), tree.type(child), SymbolKind.VAR);
+        }
+        writeSubroutineEntry(className + "." + tree.name(node), subroutineType);
+        generateStatements(child);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.className = className;
+            event.subroutine = tree.name(node);
+            event.instructions = vmWriter.code().size() - firstInstruction;
+            event.commit();
+        }
+    }
+
+    private void generateStatements(int block) {
+        for (int node = tree.firstChild(block); node != SyntaxTree.NONE; node = tree.nextSibling(node)) {
+            switch (tree.kind(node)) {
+                case LET: generateLet(node); break;
+                case IF: generateIf(node); break;
+                case WHILE: generateWhile(node); break;
+                case DO:
+                    generateCall(tree.firstChild(node));
+                    vmWriter.writePop("temp", 0);  // Discard return value
+                    break;
+                case RETURN:
+                    int value = tree.firstChild(node);
+                    if (value != SyntaxTree.NONE) {
+                        generateExpression(value);
+                    } else {
+                        vmWriter.writePush("constant", 0);
+                    }
+                    vmWriter.writeReturn();
+                    break;
+                default:
+                    throw new IllegalStateException("Not a statement: " + tree.kind(node));
+            }
+        }
+    }
+
+    private void generateLet(int node) {
+        int target = resolve(node);
+        int child = tree.firstChild(node);
+        if (tree.value(node) != 0) {
+            // Address of the entry, then the value, which may itself use "that"
+            generateExpression(child);
+            writePushVariable(target);
+            vmWriter.writeArithmetic("add");
+            generateExpression(tree.nextSibling(child));
+            vmWriter.writePop("temp", 0);
+            vmWriter.writePop("pointer", 1);
+            vmWriter.writePush("temp", 0);
+            vmWriter.writePop("that", 0);
+        } else {
+            generateExpression(child);
+            vmWriter.writePop(SymbolTable.kindOf(target).segment(), SymbolTable.indexOf(target));
+        }
+    }
+
+    private void generateIf(int node) {
+        String labelL1 = newLabel();
+        String labelL2 = newLabel();
+        int condition = tree.firstChild(node);
+        int thenBranch = tree.nextSibling(condition);
+        int elseBranch = tree.nextSibling(thenBranch);
+
+        generateExpression(condition);
+        vmWriter.writeArithmetic("not");
+        vmWriter.writeIf(labelL2);
+        generateStatements(thenBranch);
+        vmWriter.writeGoto(labelL1);
+        vmWriter.writeLabel(labelL2);
+        if (elseBranch != SyntaxTree.NONE) {
+            generateStatements(elseBranch);
+        }
+        vmWriter.writeLabel(labelL1);
+    }
+
+    private void generateWhile(int node) {
+        String labelL1 = newLabel();
+        String labelL2 = newLabel();
+        int condition = tree.firstChild(node);
+
+        vmWriter.writeLabel(labelL1);
+        generateExpression(condition);
+        vmWriter.writeArithmetic("not");
+        vmWriter.writeIf(labelL2);
+        generateStatements(tree.nextSibling(condition));
+        vmWriter.writeGoto(labelL1);
+        vmWriter.writeLabel(labelL2);
+    }
+
+    private void generateExpression(int node) {
+        switch (tree.kind(node)) {
+            case BINARY: {
+                int left = tree.firstChild(node);
+                int start = vmWriter.code().size();
+                generateExpression(left);
+                int rightStart = vmWriter.code().size();
+                generateExpression(tree.nextSibling(left));
+                writeBinary((char) tree.value(node), start, rightStart);
+                break;
+            }
+            case UNARY: {
+                int start = vmWriter.code().size();
+                generateExpression(tree.firstChild(node));
+                writeUnary((char) tree.value(node), start);
+                break;
+            }
+            case INT_CONST:
+                vmWriter.writePush("constant", tree.value(node));
+                break;
+            case STRING_CONST:
+                writeString(tree.name(node));
+                break;
+            case KEYWORD_CONST:
+                switch (KEYWORDS[tree.value(node)]) {
+                    case TRUE:
+                        vmWriter.writePush("constant", 1);
+                        vmWriter.writeArithmetic("neg");
+                        break;
+                    case THIS:
+                        vmWriter.writePush("pointer", 0);
+                        break;
+                    default:  // false, null
+                        vmWriter.writePush("constant", 0);
+                        break;
+                }
+                break;
+            case VARIABLE:
+                writePushVariable(resolve(node));
+                break;
+            case ARRAY_ENTRY: {
+                int variable = resolve(node);
+                generateExpression(tree.firstChild(node));
+                writePushVariable(variable);
+                vmWriter.writeArithmetic("add");
+                vmWriter.writePop("pointer", 1);
+                vmWriter.writePush("that", 0);
+                break;
+            }
+            case CALL:
+                generateCall(node);
+                break;
+            default:
+                throw new IllegalStateException("Not an expression: " + tree.kind(node));
+        }
+    }
+
+    private void generateCall(int node) {
+        String receiver = tree.type(node);
+        String name = tree.name(node);
+        if (receiver == null) {
+            // Method call within same class
+            vmWriter.writePush("pointer", 0);
+            vmWriter.writeCall(className + "." + name, 1 + generateArguments(node));
+            return;
+        }
+        int symbol = symbolTable.lookup(receiver);
+        if (symbol != SymbolTable.NOT_FOUND) {
+            // Object method call: push object reference first
+            writePushVariable(symbol);
+            vmWriter.writeCall(symbolTable.typeOf(symbol) + "." + name, 1 + generateArguments(node));
+        } else {
+            // Static function call
+            vmWriter.writeCall(receiver + "." + name, generateArguments(node));
+        }
+    }
+
+    // Returns the number of arguments
+    private int generateArguments(int call) {
+        int count = 0;
+        for (int argument = tree.firstChild(call); argument != SyntaxTree.NONE; argument = tree.nextSibling(argument)) {
+            generateExpression(argument);
+            count++;
+        }
+        return count;
+    }
+
+    private int resolve(int node) {
+        int symbol = symbolTable.lookup(tree.name(node));
+        if (symbol == SymbolTable.NOT_FOUND) {
+            throw new CompileError(new Diagnostic(tree.sourceName(), tree.line(node), tree.column(node),
+                "Undefined variable: " + tree.name(node)));
+        }
+        return symbol;
+    }
+
+    private void writePushVariable(int symbol) {
+        vmWriter.writePush(SymbolTable.kindOf(symbol).segment(), SymbolTable.indexOf(symbol));
+    }
+
+    /**
+     * Pushes a string constant that is built only once per class: the first
+     * evaluation stores it in a reserved static, later ones reuse that object.
+     */
+    private void writePooledString(String value) {
+        Integer slot = literalSlots.get(value);
+        if (slot == null) {
+            slot = symbolTable.reserveStatic();
+            literalSlots.put(value, slot);
+        }
+        String ready = newLabel();
+        vmWriter.writePush(Segment.STATIC, slot);
+        vmWriter.writeIf(ready);
+        vmWriter.writeString(value);
+        vmWriter.writePop(Segment.STATIC, slot);
+        vmWriter.writeLabel(ready);
+        vmWriter.writePush(Segment.STATIC, slot);
+    }
+
+    /**
+     * Folds "left operator right" if both operands, emitted at [leftStart, rightStart)
+     * and [rightStart, end), are constants. Arithmetic follows the 16-bit two's-complement
+     * semantics of the Hack platform; division by zero is left for Math.divide to report.
+     * Returns whether the operation was folded.
+     */
+    private boolean foldBinary(char operator, int leftStart, int rightStart) {
+        int end = vmWriter.code().size();
+        int left = constantValue(leftStart, rightStart);
+        if (left == NOT_CONSTANT) return false;
+        int right = constantValue(rightStart, end);
+        if (right == NOT_CONSTANT) return false;
+
+        int result;
+        switch (operator) {
+            case '+': result = left + right; break;
+            case '-': result = left - right; break;
+            case '*': result = left * right; break;
+            case '/':
+                if (right == 0) return false;
+                result = left / right;
+                break;
+            case '&': result = left & right; break;
+            case '|': result = left | right; break;
+            case '<': result = left < right ? -1 : 0; break;
+            case '>': result = left > right ? -1 : 0; break;
+            case '=': result = left == right ? -1 : 0; break;
+            default: return false;
+        }
+        writeConstant(leftStart, result);
+        return true;
+    }
+
+    /**
+     * Replaces a multiplication or division with a constant operand by cheaper VM code.
+     * x*0, x*1, x*-1, x/1 and x/-1 need no call at all; other multipliers become a
+     * double-and-add sequence if it is at most MAX_REDUCED_LENGTH instructions long.
+     * The sequence keeps x in temp 1 and the running product in temp 2 while it
+     * duplicates values, unless x is a single push that can simply be repeated.
+     * Divisions by other constants keep calling Math.divide, whose rounding toward
+     * zero has no cheap VM equivalent. Returns whether the operation was reduced.
+     */
+    private boolean reduceStrength(char operator, int leftStart, int rightStart) {
+        VMCode code = vmWriter.code();
+        int end = code.size();
+        int factor = constantValue(rightStart, end);
+        int xStart = leftStart;
+        int xEnd = rightStart;
+        if (factor == NOT_CONSTANT) {
+            if (operator == '/') return false;
+            factor = constantValue(leftStart, rightStart);
+            if (factor == NOT_CONSTANT) return false;
+            xStart = rightStart;
+            xEnd = end;
+        }
+
+        boolean simple = xEnd - xStart == 1 && code.command(xStart) == VMCommand.PUSH
+                && code.segment(xStart) != Segment.TEMP;
+        int magnitude = Math.abs(factor);
+        if (operator == '/' && magnitude != 1) return false;
+        if (magnitude > 1 && multiplyLength(magnitude, simple) + (factor < 0 ? 1 : 0) > MAX_REDUCED_LENGTH) {
+            return false;
+        }
+
+        // Drop the constant operand so that only the code for x is left at the tail
+        if (xStart == leftStart) {
+            code.truncate(rightStart);
+        } else {
+            code.delete(leftStart, rightStart);
+        }
+
+        if (factor == 0) {
+            // x is still evaluated for its side effects
+            vmWriter.writePush(Segment.CONSTANT, 0);
+            vmWriter.writeArithmetic("and");
+            return true;
+        }
+        if (magnitude > 1) {
+            int xIndex = code.size() - 1;
+            Segment xSegment = simple ? code.segment(xIndex) : Segment.TEMP;
+            int xOffset = simple ? code.arg2(xIndex) : 1;
+            if (!simple) {
+                vmWriter.writePop(Segment.TEMP, 1);
+                vmWriter.writePush(Segment.TEMP, 1);
+            }
+            boolean productIsX = true;
+            for (int bit = Integer.highestOneBit(magnitude) >> 1; bit != 0; bit >>= 1) {
+                if (productIsX) {
+                    vmWriter.writePush(xSegment, xOffset);
+                } else {
+                    vmWriter.writePop(Segment.TEMP, 2);
+                    vmWriter.writePush(Segment.TEMP, 2);
+                    vmWriter.writePush(Segment.TEMP, 2);
+                }
+                vmWriter.writeArithmetic("add");
+                productIsX = false;
+                if ((magnitude & bit) != 0) {
+                    vmWriter.writePush(xSegment, xOffset);
+                    vmWriter.writeArithmetic("add");
+                }
+            }
+        }
+        if (factor < 0) {
+            vmWriter.writeArithmetic("neg");
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of instructions reduceStrength emits to multiply x by
+     * magnitude (at least 2), not counting the code for x itself.
+     */
+    private static int multiplyLength(int magnitude, boolean simple) {
+        int length = simple ? 0 : 2;
+        boolean productIsX = true;
+        for (int bit = Integer.highestOneBit(magnitude) >> 1; bit != 0; bit >>= 1) {
+            length += productIsX ? 2 : 4;
+            productIsX = false;
+            if ((magnitude & bit) != 0) {
+                length += 2;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Returns the 16-bit value pushed by the code in [start, end) if that code is a
+     * constant (push constant n, optionally followed by neg or not), else NOT_CONSTANT.
+     */
+    private int constantValue(int start, int end) {
+        VMCode code = vmWriter.code();
+        int length = end - start;
+        if (length < 1 || length > 2) return NOT_CONSTANT;
+        if (code.command(start) != VMCommand.PUSH || code.segment(start) != Segment.CONSTANT) return NOT_CONSTANT;
+        int value = code.arg2(start);
+        if (value > Short.MAX_VALUE) return NOT_CONSTANT;
+        if (length == 1) return value;
+        switch (code.command(start + 1)) {
+            case NEG: return (short) -value;
+            case NOT: return (short) ~value;
+            default: return NOT_CONSTANT;
+        }
+    }
+
+    /**
+     * Replaces everything emitted from position start on with a push of the given
+     * value, truncated to 16 bits.
+     */
+    private void writeConstant(int start, int value) {
+        vmWriter.code().truncate(start);
+        short word = (short) value;
+        if (word >= 0) {
+            vmWriter.writePush(Segment.CONSTANT, word);
+        } else if (word == Short.MIN_VALUE) {
+            // 32768 is not a valid constant, but ~32767 has the same bits
+            vmWriter.writePush(Segment.CONSTANT, Short.MAX_VALUE);
+            vmWriter.writeArithmetic("not");
+        } else {
+            vmWriter.writePush(Segment.CONSTANT, -word);
+            vmWriter.writeArithmetic("neg");
+        }
+    }
+}
@@ -0,0 +1,205 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * On-disk record of which sources the .vm files in a directory were compiled from.
+ * The manifest stores the SHA-256 of every source, and the size and modification
+ * time of the .vm file compiled from it, next to the compiler version and the
+ * code-generation options. A source whose hash matches, and whose .vm file is still
+ * the one recorded, does not need to be compiled again; a .vm file rewritten since,
+ * for example by a non-incremental compile with other options, is compiled again.
+ * A manifest written by another compiler version or with other options is ignored
+ * as a whole.
+ */
+public class CompilationCache {
+    public static final String MANIFEST_NAME = ".jackc-cache";
+
+    /**
+     * Identifies the compiler build: a hash of the compiler's class files, so that any
+     * change to how code is generated invalidates manifests written by an older build.
+     */
+    static final String COMPILER_VERSION = buildDigest();
+
+    private static final String HEADER = "jackc-cache-2";
+
+    private final File manifestFile;
+    private final String fingerprint;
+    private final Map<String, Entry> recorded;
+    private final Map<String, Entry> current;
+    private final Map<String, String> pending;  // Source name -> hash, until compiled
+    private int hits;
+    private int misses;
+
+    /**
+     * Opens the manifest of the given output directory for a compile with the given options.
+     * A missing, unreadable or outdated manifest gives an empty cache.
+     */
+    public CompilationCache(File outputDirectory, CompilerOptions options) {
+        this.manifestFile = new File(outputDirectory, MANIFEST_NAME);
+        this.fingerprint = COMPILER_VERSION + " " + options.fingerprint();
+        this.recorded = load(manifestFile, fingerprint);
+        this.current = new TreeMap<>(recorded);
+        this.pending = new HashMap<>();
+    }
+
+    /**
+     * Returns true if the given source is unchanged since its .vm file was written,
+     * and that file has not been changed or replaced since. The new hash of a changed
+     * source is only recorded once compiled() is called for it.
+     */
+    public boolean isUpToDate(File jackFile, File vmFile) throws IOException {
+        String hash = hash(jackFile);
+        String name = jackFile.getName();
+        Entry entry = recorded.get(name);
+        boolean upToDate = entry != null && entry.hash.equals(hash) && vmFile.isFile()
+            && vmFile.length() == entry.outputSize && vmFile.lastModified() == entry.outputModified;
+        if (upToDate) {
+            hits++;
+        } else {
+            misses++;
+            current.remove(name);
+            pending.put(name, hash);
+        }
+        return upToDate;
+    }
+
+    /**
+     * Records that the given source was compiled successfully into the given .vm file.
+     */
+    public void compiled(File jackFile, File vmFile) {
+        String hash = pending.remove(jackFile.getName());
+        if (hash != null) {
+            current.put(jackFile.getName(), new Entry(hash, vmFile.length(), vmFile.lastModified()));
+        }
+    }
+
+    /**
+     * Forgets sources that no longer exist, so deleted classes do not linger in the manifest.
+     */
+    public void forgetDeleted() {
+        File directory = manifestFile.getParentFile();
+        current.keySet().removeIf(name -> !new File(directory, name).isFile());
+    }
+
+    public int hits() {
+        return hits;
+    }
+
+    public int misses() {
+        return misses;
+    }
+
+    /**
+     * Writes the manifest, replacing the old one atomically where the file system allows.
+     */
+    public void save() throws IOException {
+        Path target = manifestFile.toPath();
+        Path temp = target.resolveSibling(MANIFEST_NAME + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writer.write(HEADER + " " + fingerprint);
+            writer.newLine();
+            for (Map.Entry<String, Entry> entry : current.entrySet()) {
+                Entry value = entry.getValue();
+                writer.write(value.hash + " " + value.outputSize + " " + value.outputModified + " " + entry.getKey());
+                writer.newLine();
+            }
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static Map<String, Entry> load(File manifestFile, String fingerprint) {
+        Map<String, Entry> entries = new HashMap<>();
+        if (!manifestFile.isFile()) return entries;
+        try (BufferedReader reader = Files.newBufferedReader(manifestFile.toPath(), StandardCharsets.UTF_8)) {
+            if (!(HEADER + " " + fingerprint).equals(reader.readLine())) return entries;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // hash size modified name; the name may itself contain spaces
+                String[] fields = line.split(" ", 4);
+                if (fields.length == 4) {
+                    entries.put(fields[3], new Entry(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2])));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // An unreadable manifest only costs a full rebuild
+            entries.clear();
+        }
+        return entries;
+    }
+
+    private static String hash(File file) throws IOException {
+        return hex(sha256().digest(Files.readAllBytes(file.toPath())));
+    }
+
+    /**
+     * Hashes the jar the compiler runs from, or every class file in its class directory,
+     * in name order. Falls back to a value no manifest matches, forcing a full rebuild,
+     * if the classes cannot be read.
+     */
+    private static String buildDigest() {
+        try {
+            Path location = Path.of(CompilationCache.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            MessageDigest digest = sha256();
+            if (Files.isDirectory(location)) {
+                try (Stream<Path> files = Files.list(location)) {
+                    for (Path classFile : (Iterable<Path>) files.filter(path -> path.toString().endsWith(".class")).sorted()::iterator) {
+                        digest.update(classFile.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+                        digest.update(Files.readAllBytes(classFile));
+                    }
+                }
+            } else {
+                digest.update(Files.readAllBytes(location));
+            }
+            return hex(digest.digest()).substring(0, 16);
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            return "unknown-" + System.nanoTime();
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    // What the manifest records for one source
+    private static final class Entry {
+        final String hash;
+        final long outputSize;
+        final long outputModified;
+
+        Entry(String hash, long outputSize, long outputModified) {
+            this.hash = hash;
+            this.outputSize = outputSize;
+            this.outputModified = outputModified;
+        }
+    }
+}
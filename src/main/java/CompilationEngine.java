@@ -1,12 +1,23 @@
 import java.io.*;
 
 public class CompilationEngine {
-    private JackTokenizer tokenizer;
+    private TokenStream tokenizer;
     private VMWriter vmWriter;
     private SymbolTable symbolTable;
     private String className;        // Current class name
     private String currentFunction;  // Current function/method name
-    private int ifWhileCounter;
+    private final CodeGenerator codeGenerator;
+    private final boolean syntaxTree;
+    private final CompileStats statistics;            // null unless statistics are collected
+    private final boolean backgroundLexing;
+
+    // Each thread reuses one tree's arrays for all the classes it compiles
+    private static final ThreadLocal<SyntaxTree> TREES = ThreadLocal.withInitial(SyntaxTree::new);
+    // A tree grown past this many nodes, about 300 KB of arrays, is dropped after its class
+    // instead of being held by a pool or server thread for as long as the thread lives
+    private static final int MAX_RETAINED_NODES = 1 << 13;
+
+    private static final boolean[] OPERATORS = JackTokenizer.asciiTable("+-*/&|<>=");
 
     /**
      * Creates a new compilation engine.
@@ -14,40 +25,119 @@ public class CompilationEngine {
      * Receives the input file and the output file.
      */
     public CompilationEngine(File inputFile, File outputFile) throws IOException {
-        tokenizer = new JackTokenizer(inputFile);
-        vmWriter = new VMWriter(outputFile.getPath());
+        this(inputFile, outputFile, new CompilerOptions());
+    }
+
+    /**
+     * Creates a new compilation engine with the given options.
+     * The next routine called must be compileClass.
+     */
+    public CompilationEngine(File inputFile, File outputFile, CompilerOptions options) throws IOException {
+        this(new JackTokenizer(inputFile), new VMWriter(outputFile.getPath(), options.isDirectOutput()), options);
+    }
+
+    /**
+     * Creates a new compilation engine that reads from the given tokenizer and
+     * writes to the given writer, which need not be backed by files.
+     * The next routine called must be compileClass.
+     */
+    public CompilationEngine(JackTokenizer input, VMWriter output, CompilerOptions options) throws IOException {
+        statistics = options.getStatistics();
+        backgroundLexing = options.isBackgroundLexing();
+        tokenizer = new TokenStream(input, backgroundLexing, statistics != null);
+        vmWriter = output;
+        vmWriter.setOptimizer(options.getPeepholeOptimizer());
         symbolTable = new SymbolTable();
-        ifWhileCounter = 0;
+        codeGenerator = new CodeGenerator(vmWriter, symbolTable, options);
+        syntaxTree = options.isSyntaxTree();
 
         if (tokenizer.hasMoreTokens()) {
             tokenizer.advance();
         } else {
-            throw new IOException("Empty file: " + inputFile);
+            throw new IOException("Empty file: " + tokenizer.sourceName());
         }
     }
 
     /**
      * Compiles a complete class.
+     * Throws CompileError, which locates the problem in the source, if the class is invalid.
      */
     public void compileClass() throws IOException {
+        long start = statistics != null ? System.nanoTime() : 0;
+        try {
+            if (syntaxTree) {
+                // Parse the whole class, then generate its code in a separate pass
+                SyntaxTree tree = TREES.get();
+                try {
+                    new SyntaxTreeParser(tokenizer, tree).parseClass();
+                    className = tree.name(SyntaxTree.ROOT);
+                    codeGenerator.generate(tree);
+                } finally {
+                    if (tree.capacity() > MAX_RETAINED_NODES) {
+                        TREES.remove();
+                    }
+                }
+            } else {
+                compileClassDirectly();
+            }
+            vmWriter.close();
+            if (statistics != null) {
+                recordStatistics(System.nanoTime() - start);
+            }
+        } catch (CompileError e) {
+            throw e;
+        } catch (RuntimeException e) {
+            // Place errors raised below the grammar rules, such as an undefined variable, at the current token
+            throw new CompileError(new Diagnostic(tokenizer.sourceName(), tokenizer.line(), tokenizer.column(), e.getMessage()), e);
+        } finally {
+            tokenizer.close();
+        }
+    }
+
+    // Generates code while parsing, with no tree in between
+    private void compileClassDirectly() throws IOException {
         // class className {
         handleKeyword(KeywordType.CLASS);
         className = tokenizer.identifier();
+        codeGenerator.setClassName(className);
         handleIdentifier();
         handleSymbol('{');
 
         // Class variable declarations
-        while (tokenizer.hasMoreTokens() && isClassVarDec()) {
+        while (isClassVarDec()) {
             compileClassVarDec();
         }
 
         // Subroutine declarations
-        while (tokenizer.hasMoreTokens() && isSubroutine()) {
+        while (isSubroutine()) {
             compileSubroutine();
         }
 
-        // handleSymbol('}');
-        vmWriter.close();
+        handleSymbol('}');
+    }
+
+    private void recordStatistics(long totalNanos) {
+        long lexNanos = tokenizer.lexNanos();
+        // A background lexer runs alongside the parser, so its time is not part of the parser's
+        long parseNanos = totalNanos - vmWriter.optimizeNanos() - vmWriter.writeNanos() - (backgroundLexing ? 0 : lexNanos);
+        statistics.add(new FileStats(tokenizer.sourceName(), tokenizer.tokenCount(), vmWriter.code().size(),
+            tokenizer.sourceSize(), vmWriter.bytesWritten(), lexNanos, parseNanos,
+            vmWriter.optimizeNanos(), vmWriter.writeNanos(), totalNanos));
+    }
+
+    /**
+     * Returns the name of the compiled class. Valid once compileClass has returned.
+     */
+    public String className() {
+        return className;
+    }
+
+    /**
+     * Returns how many instructions the peephole optimizer removed from this class.
+     * Valid once compileClass has returned.
+     */
+    public int removedInstructions() {
+        return vmWriter.removedInstructions();
     }
 
     /**
@@ -55,7 +145,7 @@ public class CompilationEngine {
      */
     private void compileClassVarDec() throws IOException {
         // static or field
-        String kind = tokenizer.keyword().toString();
+        SymbolKind kind = tokenizer.keyword() == KeywordType.STATIC ? SymbolKind.STATIC : SymbolKind.FIELD;
         handleKeyword(KeywordType.STATIC, KeywordType.FIELD);
 
         // Get type
@@ -77,6 +167,9 @@ public class CompilationEngine {
      * Compiles a complete method, function, or constructor.
      */
     private void compileSubroutine() throws IOException {
+        CompileSubroutineEvent event = new CompileSubroutineEvent();
+        event.begin();
+        int firstInstruction = vmWriter.code().size();
         symbolTable.reset();  // Reset subroutine-level symbol table
 
         // constructor/function/method
@@ -95,13 +188,21 @@ public class CompilationEngine {
 
         // If it's a method, add 'this' as first argument
         if (subroutineType == KeywordType.METHOD) {
-            symbolTable.define("this", className, "ARG");
+            symbolTable.define("this", className, SymbolKind.ARG);
         }
 
         compileParameterList();
         handleSymbol(')');
 
         compileSubroutineBody(subroutineType);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.className = className;
+            event.subroutine = functionName;
+            event.instructions = vmWriter.code().size() - firstInstruction;
+            event.commit();
+        }
     }
 
     /**
@@ -115,18 +216,8 @@ public class CompilationEngine {
             compileVarDec();
         }
 
-        // Write function declaration
-        vmWriter.writeFunction(currentFunction, symbolTable.varCount("VAR"));
-
-        // Set up this pointer for methods and constructors
-        if (subroutineType == KeywordType.METHOD) {
-            vmWriter.writePush("argument", 0);
-            vmWriter.writePop("pointer", 0);
-        } else if (subroutineType == KeywordType.CONSTRUCTOR) {
-            vmWriter.writePush("constant", symbolTable.varCount("FIELD"));
-            vmWriter.writeCall("Memory.alloc", 1);
-            vmWriter.writePop("pointer", 0);
-        }
+        // Write function declaration, then set up this pointer for methods and constructors
+        codeGenerator.writeSubroutineEntry(currentFunction, subroutineType);
 
         compileStatements();
         handleSymbol('}');
@@ -142,13 +233,13 @@ public class CompilationEngine {
 
         // First parameter
         String type = getType();
-        compileVarName(type, "ARG");
+        compileVarName(type, SymbolKind.ARG);
 
         // Additional parameters
         while (tokenizer.tokenType() == TokenType.SYMBOL && tokenizer.symbol() == ',') {
             handleSymbol(',');
             type = getType();
-            compileVarName(type, "ARG");
+            compileVarName(type, SymbolKind.ARG);
         }
     }
 
@@ -158,11 +249,11 @@ public class CompilationEngine {
     private void compileVarDec() throws IOException {
         handleKeyword(KeywordType.VAR);
         String type = getType();
-        compileVarName(type, "VAR");
+        compileVarName(type, SymbolKind.VAR);
 
         while (tokenizer.tokenType() == TokenType.SYMBOL && tokenizer.symbol() == ',') {
             handleSymbol(',');
-            compileVarName(type, "VAR");
+            compileVarName(type, SymbolKind.VAR);
         }
 
         handleSymbol(';');
@@ -173,8 +264,6 @@ public class CompilationEngine {
      */
     private void compileStatements() throws IOException {
         while (true) {
-            if (!tokenizer.hasMoreTokens()) break;
-
             TokenType type = tokenizer.tokenType();
             if (type != TokenType.KEYWORD) break;
 
@@ -196,6 +285,7 @@ public class CompilationEngine {
     private void compileLet() throws IOException {
         handleKeyword(KeywordType.LET);
         String varName = tokenizer.identifier();
+        int target = resolve(varName);  // Before advancing, so an undefined name is reported where it is
         handleIdentifier();
 
         boolean isArray = false;
@@ -206,9 +296,7 @@ public class CompilationEngine {
             handleSymbol(']');
 
             // Push base address
-            String kind = symbolTable.kindOf(varName);
-            int index = symbolTable.indexOf(varName);
-            vmWriter.writePush(segmentForKind(kind), index);
+            writePushVariable(target);
 
             // Add index to base address
             vmWriter.writeArithmetic("add");
@@ -224,9 +312,7 @@ public class CompilationEngine {
             vmWriter.writePush("temp", 0);     // Restore value
             vmWriter.writePop("that", 0);      // Store value
         } else {
-            String kind = symbolTable.kindOf(varName);
-            int index = symbolTable.indexOf(varName);
-            vmWriter.writePop(segmentForKind(kind), index);
+            vmWriter.writePop(SymbolTable.kindOf(target).segment(), SymbolTable.indexOf(target));
         }
     }
 
@@ -234,9 +320,8 @@ public class CompilationEngine {
      * Compiles an if statement.
      */
     private void compileIf() throws IOException {
-        String labelL1 = className + "_" + ifWhileCounter;
-        String labelL2 = className + "_" + (ifWhileCounter + 1);
-        ifWhileCounter+=2;
+        String labelL1 = codeGenerator.newLabel();
+        String labelL2 = codeGenerator.newLabel();
 
         handleKeyword(KeywordType.IF);
         handleSymbol('(');
@@ -267,9 +352,8 @@ public class CompilationEngine {
      * Compiles a while statement.
      */
     private void compileWhile() throws IOException {
-        String labelL1 = className + "_" + ifWhileCounter;
-        String labelL2 = className + "_" + (ifWhileCounter + 1);
-        ifWhileCounter += 2;
+        String labelL1 = codeGenerator.newLabel();
+        String labelL2 = codeGenerator.newLabel();
 
         handleKeyword(KeywordType.WHILE);
         
@@ -323,24 +407,15 @@ public class CompilationEngine {
      * Compiles an expression.
      */
     private void compileExpression() throws IOException {
+        int start = vmWriter.code().size();
         compileTerm();
         
         while (tokenizer.tokenType() == TokenType.SYMBOL && isOperator(tokenizer.symbol())) {
             char operator = tokenizer.symbol();
             handleSymbol(operator);
+            int rightStart = vmWriter.code().size();
             compileTerm();
-            
-            switch (operator) {
-                case '+': vmWriter.writeArithmetic("add"); break;
-                case '-': vmWriter.writeArithmetic("sub"); break;
-                case '*': vmWriter.writeCall("Math.multiply", 2); break;
-                case '/': vmWriter.writeCall("Math.divide", 2); break;
-                case '&': vmWriter.writeArithmetic("and"); break;
-                case '|': vmWriter.writeArithmetic("or"); break;
-                case '<': vmWriter.writeArithmetic("lt"); break;
-                case '>': vmWriter.writeArithmetic("gt"); break;
-                case '=': vmWriter.writeArithmetic("eq"); break;
-            }
+            codeGenerator.writeBinary(operator, start, rightStart);
         }
     }
 
@@ -349,7 +424,10 @@ public class CompilationEngine {
      */
     private void compileTerm() throws IOException {
         TokenType type = tokenizer.tokenType();
-        
+        if (type == null) {
+            throw tokenizer.syntaxError("term");
+        }
+
         switch (type) {
             case INT_CONST:
                 vmWriter.writePush("constant", tokenizer.intVal());
@@ -357,13 +435,7 @@ public class CompilationEngine {
                 break;
                 
             case STRING_CONST:
-                String strConst = tokenizer.stringVal();
-                vmWriter.writePush("constant", strConst.length());
-                vmWriter.writeCall("String.new", 1);
-                for (char c : strConst.toCharArray()) {
-                    vmWriter.writePush("constant", (int)c);
-                    vmWriter.writeCall("String.appendChar", 2);
-                }
+                codeGenerator.writeString(tokenizer.stringVal());
                 handleStringConstant();
                 break;
                 
@@ -382,38 +454,38 @@ public class CompilationEngine {
                         vmWriter.writePush("pointer", 0);
                         break;
                     default:
-                        throw new IOException("Unexpected keyword in term: " + keyword);
+                        throw tokenizer.syntaxError("term");
                 }
                 handleKeyword(keyword);
                 break;
                 
             case IDENTIFIER:
-                String name = tokenizer.identifier();
+                // One token of lookahead tells variables, array entries and calls apart
+                char next = tokenizer.peekSymbol(1);
+
+                // Subroutine call
+                if (next == '(' || next == '.') {
+                    compileSubroutineCall();
+                    break;
+                }
+
+                int variable = resolve(tokenizer.identifier());
                 handleIdentifier();
-                
+
                 // Array access
-                if (tokenizer.tokenType() == TokenType.SYMBOL && tokenizer.symbol() == '[') {
+                if (next == '[') {
                     handleSymbol('[');
                     compileExpression();
                     handleSymbol(']');
                     
-                    String kind = symbolTable.kindOf(name);
-                    int index = symbolTable.indexOf(name);
-                    vmWriter.writePush(segmentForKind(kind), index);
+                    writePushVariable(variable);
                     vmWriter.writeArithmetic("add");
                     vmWriter.writePop("pointer", 1);
                     vmWriter.writePush("that", 0);
                 }
-                // Subroutine call
-                else if (tokenizer.tokenType() == TokenType.SYMBOL && 
-                       (tokenizer.symbol() == '(' || tokenizer.symbol() == '.')) {
-                    compileSubroutineCall(name);
-                }
                 // Variable
                 else {
-                    String kind = symbolTable.kindOf(name);
-                    int index = symbolTable.indexOf(name);
-                    vmWriter.writePush(segmentForKind(kind), index);
+                    writePushVariable(variable);
                 }
                 break;
                 
@@ -426,12 +498,12 @@ public class CompilationEngine {
                 }
                 else if (symbol == '-' || symbol == '~') {
                     handleSymbol(symbol);
+                    int start = vmWriter.code().size();
                     compileTerm();
-                    if (symbol == '-') {
-                        vmWriter.writeArithmetic("neg");
-                    } else {
-                        vmWriter.writeArithmetic("not");
-                    }
+                    codeGenerator.writeUnary(symbol, start);
+                }
+                else {
+                    throw tokenizer.syntaxError("term");
                 }
                 break;
         }
@@ -464,8 +536,6 @@ public class CompilationEngine {
         return nArgs;
     }
 
-    // Helper methods :
-
     // Compiles a subroutine call
     private void compileSubroutineCall() throws IOException {
         String identifier = tokenizer.identifier();
@@ -482,11 +552,11 @@ public class CompilationEngine {
             handleIdentifier();
             
             // Check if it's a method call on an object
-            String kind = symbolTable.kindOf(identifier);
-            if (!kind.equals("NONE")) {
+            int symbol = symbolTable.lookup(identifier);
+            if (symbol != SymbolTable.NOT_FOUND) {
                 // Object method call: push object reference first
-                String type = symbolTable.typeOf(identifier);
-                vmWriter.writePush(segmentForKind(kind), symbolTable.indexOf(identifier));
+                String type = symbolTable.typeOf(symbol);
+                vmWriter.writePush(SymbolTable.kindOf(symbol).segment(), SymbolTable.indexOf(symbol));
                 nArgs = 1;
                 vmWriter.writeCall(type + "." + methodName, nArgs + compileExpressionList());
             } else {
@@ -502,57 +572,23 @@ public class CompilationEngine {
     }
 
     private void handleKeyword(KeywordType... expected) throws IOException {
-        if (tokenizer.tokenType() != TokenType.KEYWORD) {
-            throw new IllegalStateException("Expected keyword, got " + tokenizer.tokenType());
-        }
-
-        KeywordType currentKeywordType = tokenizer.keyword();
-        boolean found = false;
-        for (KeywordType exp : expected) {
-            if (currentKeywordType == exp) {
-                found = true;
-                break;
-            }
-        }
-
-        if (!found) {
-            throw new IllegalStateException("Expected one of the keywords: " + expected + ", got " + currentKeywordType);
-        }
-
-        tokenizer.advance();
+        tokenizer.expectKeyword(expected);
     }
 
     private void handleSymbol(char expected) throws IOException {
-        if (tokenizer.tokenType() != TokenType.SYMBOL || tokenizer.symbol() != expected) {
-            throw new IllegalStateException(
-                String.format("Expected symbol '%c', got %s (current symbol: %c)", 
-                    expected, 
-                    tokenizer.tokenType(),
-                    tokenizer.tokenType() == TokenType.SYMBOL ? tokenizer.symbol() : '?')
-            );
-        }
-        tokenizer.advance();
+        tokenizer.expectSymbol(expected);
     }
 
     private void handleIdentifier() throws IOException {
-        if (tokenizer.tokenType() != TokenType.IDENTIFIER) {
-            throw new IllegalStateException("Expected identifier, got " + tokenizer.tokenType());
-        }
-        tokenizer.advance();
+        tokenizer.expectIdentifier();
     }
 
     private void handleIntegerConstant() throws IOException {
-        if (tokenizer.tokenType() != TokenType.INT_CONST) {
-            throw new IllegalStateException("Expected integer constant, got " + tokenizer.tokenType());
-        }
-        tokenizer.advance();
+        tokenizer.expectIntegerConstant();
     }
 
     private void handleStringConstant() throws IOException {
-        if (tokenizer.tokenType() != TokenType.STRING_CONST) {
-            throw new IllegalStateException("Expected string constant, got " + tokenizer.tokenType());
-        }
-        tokenizer.advance();
+        tokenizer.expectStringConstant();
     }
 
     private String getType() throws IOException {
@@ -586,20 +622,22 @@ public class CompilationEngine {
     }
 
     private boolean isOperator(char c) {
-        return "+-*/&|<>=".indexOf(c) != -1;
+        return c < 128 && OPERATORS[c];
     }
 
-    private String segmentForKind(String kind) {
-        switch (kind) {
-            case "STATIC": return "static";
-            case "FIELD": return "this";
-            case "ARG": return "argument";
-            case "VAR": return "local";
-            default: throw new IllegalArgumentException("Invalid kind: " + kind);
+    private int resolve(String name) {
+        int symbol = symbolTable.lookup(name);
+        if (symbol == SymbolTable.NOT_FOUND) {
+            throw new IllegalArgumentException("Undefined variable: " + name);
         }
+        return symbol;
+    }
+
+    private void writePushVariable(int symbol) {
+        vmWriter.writePush(SymbolTable.kindOf(symbol).segment(), SymbolTable.indexOf(symbol));
     }
 
-    private void compileVarName(String type, String kind) throws IOException {
+    private void compileVarName(String type, SymbolKind kind) throws IOException {
         String name = tokenizer.identifier();
         symbolTable.define(name, type, kind);
         handleIdentifier();
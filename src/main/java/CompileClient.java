@@ -0,0 +1,80 @@
+import java.io.File;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Thin command-line front end for a running CompileServer.
+ * By default each argument is compiled in place by the server, like JackCompiler
+ * would; with --source the client sends the text of each .jack file instead and
+ * prints the returned VM code. Exits with status 1 if any request failed.
+ */
+public class CompileClient {
+    private static final String USAGE =
+        "Usage: java CompileClient <socket path> [--source] <input file/directory>...";
+
+    public static void main(String[] args) {
+        boolean sendSource = false;
+        String socket = null;
+        List<String> inputs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("--source")) {
+                sendSource = true;
+            } else if (arg.startsWith("--")) {
+                usage();
+            } else if (socket == null) {
+                socket = arg;
+            } else {
+                inputs.add(arg);
+            }
+        }
+        if (socket == null || inputs.isEmpty()) {
+            usage();
+        }
+
+        boolean failed = false;
+        try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(UnixDomainSocketAddress.of(socket));
+            for (String input : inputs) {
+                File file = new File(input);
+                if (sendSource) {
+                    String source = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+                    CompileProtocol.writeFrame(channel, CompileProtocol.SOURCE);
+                    CompileProtocol.writeFrame(channel, source);
+                } else {
+                    // The server may run in another directory, so send an absolute path
+                    CompileProtocol.writeFrame(channel, CompileProtocol.PATH);
+                    CompileProtocol.writeFrame(channel, file.getAbsolutePath());
+                }
+                String status = CompileProtocol.readFrame(channel);
+                String body = CompileProtocol.readFrame(channel);
+                if (status == null || body == null) {
+                    throw new IOException("Server closed the connection");
+                }
+                if (status.equals(CompileProtocol.OK)) {
+                    System.out.print(body);
+                } else {
+                    System.err.println("Error: " + input + ": " + body);
+                    failed = true;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    private static void usage() {
+        System.err.println(USAGE);
+        System.exit(1);
+    }
+}
@@ -0,0 +1,22 @@
+/**
+ * Thrown by CompilationEngine when a class cannot be compiled. Carries a
+ * Diagnostic that locates the error in the source.
+ */
+public class CompileError extends IllegalStateException {
+    private static final long serialVersionUID = 1L;
+
+    private final Diagnostic diagnostic;
+
+    public CompileError(Diagnostic diagnostic) {
+        this(diagnostic, null);
+    }
+
+    public CompileError(Diagnostic diagnostic, Throwable cause) {
+        super(diagnostic.toString(), cause);
+        this.diagnostic = diagnostic;
+    }
+
+    public Diagnostic diagnostic() {
+        return diagnostic;
+    }
+}
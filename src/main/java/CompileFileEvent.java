@@ -0,0 +1,26 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JDK Flight Recorder event for compiling one .jack file into a .vm file,
+ * emitted by JackCompiler.compileFile. Its duration covers lexing, parsing,
+ * optimization and writing.
+ */
+@Name("jack.CompileFile")
+@Label("Compile File")
+@Category("Jack Compiler")
+@Description("Compilation of one .jack file into a .vm file")
+public class CompileFileEvent extends Event {
+    @Label("Source File")
+    String file;
+
+    @Label("Output File")
+    String outputFile;
+
+    @Label("Removed Instructions")
+    @Description("Instructions removed by the peephole optimizer")
+    int removedInstructions;
+}
@@ -0,0 +1,69 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wire format shared by CompileServer and CompileClient.
+ * Every message is a sequence of frames: a 4-byte big-endian length followed by
+ * that many bytes of UTF-8 text.
+ *
+ * A request is two frames, a command and its argument:
+ *   PATH   / a .jack file or directory on the server's file system, compiled in place
+ *   SOURCE / the text of one Jack class, compiled in memory
+ * A response is two frames, a status and a body:
+ *   OK    / the progress lines for PATH, or the VM code for SOURCE
+ *   ERROR / the diagnostic
+ * A connection may carry any number of requests, one after the other.
+ */
+public class CompileProtocol {
+    public static final String PATH = "PATH";
+    public static final String SOURCE = "SOURCE";
+    public static final String OK = "OK";
+    public static final String ERROR = "ERROR";
+
+    // Upper bound on a frame, so a corrupt length cannot make the reader allocate gigabytes
+    private static final int MAX_FRAME = 64 << 20;
+
+    private CompileProtocol() {
+    }
+
+    /**
+     * Writes one frame holding the given text.
+     */
+    public static void writeFrame(SocketChannel channel, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = ByteBuffer.allocate(4 + bytes.length);
+        frame.putInt(bytes.length).put(bytes).flip();
+        while (frame.hasRemaining()) {
+            channel.write(frame);
+        }
+    }
+
+    /**
+     * Reads one frame, or returns null if the peer closed the connection between frames.
+     */
+    public static String readFrame(SocketChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(4);
+        if (!fill(channel, header, true)) return null;
+        int length = header.flip().getInt();
+        if (length < 0 || length > MAX_FRAME) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+        ByteBuffer body = ByteBuffer.allocate(length);
+        fill(channel, body, false);
+        return new String(body.array(), StandardCharsets.UTF_8);
+    }
+
+    // Reads until the buffer is full; returns false on a clean end of stream before any byte
+    private static boolean fill(SocketChannel channel, ByteBuffer buffer, boolean endAllowed) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                if (endAllowed && buffer.position() == 0) return false;
+                throw new EOFException("Connection closed in the middle of a frame");
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,226 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.ConnectException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A resident compiler that takes requests over a Unix domain socket, so build tools
+ * pay JVM startup and JIT warm-up once instead of on every compile.
+ * Each connection is served on its own thread and each request gets a fresh
+ * CompilationEngine, tokenizer, symbol table and writer; the only state shared
+ * between requests is the read-only CompilerOptions. PATH requests for the same
+ * directory are serialized, since they write the same .vm files. See CompileProtocol
+ * for the wire format.
+ */
+public class CompileServer {
+    private static final String USAGE =
+        "Usage: java CompileServer [--lex-thread] [--nio] [--peephole] [--no-fold]\n"
+        + "                          [--strength-reduce] [--pool-strings] [--ast] <socket path>";
+
+    private final Path socketPath;
+    private final CompilerOptions options;
+    private final ExecutorService workers;
+    private final ConcurrentMap<File, Object> directoryLocks;
+    private volatile boolean bound;  // Whether the socket file is this server's to remove
+
+    /**
+     * Creates a server that will listen on the given socket path and compile with the given options.
+     */
+    public CompileServer(Path socketPath, CompilerOptions options) {
+        if (options.getSharedStringPool() != null) {
+            throw new IllegalArgumentException("A compile server cannot share a string pool between requests");
+        }
+        this.socketPath = socketPath;
+        this.options = options;
+        this.workers = Executors.newCachedThreadPool();
+        this.directoryLocks = new ConcurrentHashMap<>();
+    }
+
+    public static void main(String[] args) {
+        CompilerOptions options = new CompilerOptions();
+        String socket = null;
+        for (String arg : args) {
+            if (!arg.equals("--pool-strings-global") && JackCompiler.applyOption(arg, options)) {
+                continue;
+            } else if (socket == null && !arg.startsWith("--")) {
+                socket = arg;
+            } else {
+                usage();
+            }
+        }
+        if (socket == null) {
+            usage();
+        }
+        CompileServer server = new CompileServer(Paths.get(socket), options);
+        // Remove the socket file on Ctrl-C or kill, so the next server can bind it
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.removeSocket();
+            } catch (IOException e) {
+                // Nothing left to report to
+            }
+        }));
+        try {
+            server.run();
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Accepts connections until the thread is interrupted or the socket fails.
+     * A stale socket file left by a previous server is replaced, but if a server is
+     * still listening on it, or the path is not a socket at all, an IOException is
+     * thrown and the path left alone.
+     */
+    public void run() throws IOException {
+        removeStaleSocket();
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socketPath));
+            bound = true;
+            System.out.println("Listening on " + socketPath);
+            while (!Thread.currentThread().isInterrupted()) {
+                SocketChannel client = server.accept();
+                workers.execute(() -> serve(client));
+            }
+        } finally {
+            workers.shutdownNow();
+            removeSocket();
+        }
+    }
+
+    /**
+     * Removes the socket file, if this server bound it.
+     */
+    public void removeSocket() throws IOException {
+        if (bound) {
+            bound = false;
+            Files.deleteIfExists(socketPath);
+        }
+    }
+
+    // Deletes a socket file nobody accepts connections on any more
+    private void removeStaleSocket() throws IOException {
+        if (!Files.exists(socketPath, LinkOption.NOFOLLOW_LINKS)) return;
+        // Connecting to a regular file is refused too, but that file is not ours to delete
+        if (!isSocket(socketPath)) {
+            throw new IOException(socketPath + " exists and is not a socket");
+        }
+        SocketChannel probe;
+        try {
+            probe = SocketChannel.open(UnixDomainSocketAddress.of(socketPath));
+        } catch (ConnectException e) {
+            // Connection refused: the server that created the file is gone
+            Files.deleteIfExists(socketPath);
+            return;
+        }
+        probe.close();
+        throw new IOException("Another server is listening on " + socketPath);
+    }
+
+    private static boolean isSocket(Path path) throws IOException {
+        try {
+            int mode = (Integer) Files.getAttribute(path, "unix:mode", LinkOption.NOFOLLOW_LINKS);
+            return (mode & 0170000) == 0140000;  // S_IFMT, S_IFSOCK
+        } catch (UnsupportedOperationException e) {
+            // No unix attribute view: a socket is at least neither a file, a directory nor a link
+            return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isOther();
+        }
+    }
+
+    private void serve(SocketChannel client) {
+        try (SocketChannel channel = client) {
+            while (true) {
+                String command = CompileProtocol.readFrame(channel);
+                if (command == null) return;
+                String argument = CompileProtocol.readFrame(channel);
+                if (argument == null) {
+                    throw new IOException("Request without an argument");
+                }
+                handle(channel, command, argument);
+            }
+        } catch (IOException e) {
+            System.err.println("Connection error: " + e.getMessage());
+        }
+    }
+
+    private void handle(SocketChannel channel, String command, String argument) throws IOException {
+        String status = CompileProtocol.OK;
+        String body;
+        try {
+            if (command.equals(CompileProtocol.PATH)) {
+                body = compilePath(argument);
+            } else if (command.equals(CompileProtocol.SOURCE)) {
+                body = compileSource(argument);
+            } else {
+                status = CompileProtocol.ERROR;
+                body = "Unknown command: " + command;
+            }
+        } catch (IOException | RuntimeException e) {
+            status = CompileProtocol.ERROR;
+            body = e.getMessage() != null ? e.getMessage() : e.toString();
+        }
+        CompileProtocol.writeFrame(channel, status);
+        CompileProtocol.writeFrame(channel, body);
+    }
+
+    // Compiles a .jack file, or every .jack file in a directory, next to its source
+    private String compilePath(String path) throws IOException {
+        File input = new File(path);
+        if (!input.exists()) {
+            throw new IOException("Input file/directory does not exist: " + input);
+        }
+        File[] jackFiles = input.isFile()
+            ? new File[] {input}
+            : input.listFiles((directory, fileName) -> fileName.endsWith(".jack"));
+        if (jackFiles == null) {
+            throw new IOException("Cannot list directory: " + input);
+        }
+        Arrays.sort(jackFiles);
+        File directory = input.isFile() ? input.getAbsoluteFile().getParentFile() : input;
+        StringBuilder progress = new StringBuilder();
+        synchronized (directoryLock(directory)) {
+            for (File jackFile : jackFiles) {
+                int removed = JackCompiler.compileFile(jackFile, options);
+                progress.append(JackCompiler.progressLine(jackFile, removed, options)).append('\n');
+            }
+        }
+        return progress.toString();
+    }
+
+    /**
+     * Returns the lock PATH requests hold while they compile into the given directory.
+     */
+    Object directoryLock(File directory) throws IOException {
+        return directoryLocks.computeIfAbsent(directory.getCanonicalFile(), key -> new Object());
+    }
+
+    // Compiles one class held in memory and returns its VM code
+    private String compileSource(String source) throws IOException {
+        StringWriter vmCode = new StringWriter();
+        CompilationEngine engine = new CompilationEngine(
+            JackTokenizer.fromSource(source, "<request>"), new VMWriter(vmCode), options);
+        engine.compileClass();
+        return vmCode.toString();
+    }
+
+    private static void usage() {
+        System.err.println(USAGE);
+        System.exit(1);
+    }
+}
@@ -0,0 +1,177 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Collects the FileStats of every class compiled in one run and renders them as a
+ * text summary or as JSON. Safe to share between parallel compile workers.
+ */
+public class CompileStats {
+    private static final int SLOWEST_FILES = 5;
+
+    private final Queue<FileStats> files = new ConcurrentLinkedQueue<>();
+    private volatile long wallNanos;
+
+    /**
+     * Records the statistics of one compiled class.
+     */
+    public void add(FileStats stats) {
+        files.add(stats);
+    }
+
+    /**
+     * Removes and returns the record of the given class, or returns null if there is none.
+     */
+    public FileStats remove(String file) {
+        for (FileStats stats : files) {
+            if (stats.file().equals(file) && files.remove(stats)) {
+                return stats;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sets the wall-clock time of the whole run, which is less than the sum of the
+     * per-file times when files are compiled in parallel.
+     */
+    public void setWallNanos(long wallNanos) {
+        this.wallNanos = wallNanos;
+    }
+
+    /**
+     * Returns the recorded classes, in file name order.
+     */
+    public List<FileStats> files() {
+        List<FileStats> sorted = new ArrayList<>(files);
+        sorted.sort(Comparator.comparing(FileStats::file));
+        return sorted;
+    }
+
+    /**
+     * Renders a human-readable summary: totals, time per phase and the slowest files.
+     */
+    public String summary() {
+        List<FileStats> all = files();
+        Totals totals = new Totals(all);
+        StringBuilder text = new StringBuilder();
+        text.append(String.format(Locale.ROOT, "Files: %d, tokens: %d, VM instructions: %d, read: %.1f KB, written: %.1f KB%n",
+            all.size(), totals.tokens, totals.instructions, totals.bytesRead / 1024.0, totals.bytesWritten / 1024.0));
+        text.append(String.format(Locale.ROOT, "%-16s %12s %8s%n", "Phase", "Time (ms)", "Share"));
+        phase(text, "lex", totals.lexNanos, totals.totalNanos);
+        phase(text, "parse/codegen", totals.parseNanos, totals.totalNanos);
+        phase(text, "optimize", totals.optimizeNanos, totals.totalNanos);
+        phase(text, "write", totals.writeNanos, totals.totalNanos);
+        phase(text, "total", totals.totalNanos, totals.totalNanos);
+        if (totals.lexNanos + totals.parseNanos + totals.optimizeNanos + totals.writeNanos > totals.totalNanos) {
+            text.append("(lexing ran on a background thread, overlapping the other phases)").append(System.lineSeparator());
+        }
+        if (wallNanos > 0) {
+            text.append(String.format(Locale.ROOT, "Wall time: %.2f ms", wallNanos / 1e6));
+            if (totals.totalNanos > 0) {
+                text.append(String.format(Locale.ROOT, ", %.0f tokens/s, %.1f KB/s",
+                    totals.tokens * 1e9 / wallNanos, totals.bytesRead * 1e9 / 1024 / wallNanos));
+            }
+            text.append(System.lineSeparator());
+        }
+        if (all.size() > 1) {
+            List<FileStats> slowest = new ArrayList<>(all);
+            slowest.sort(Comparator.comparingLong(FileStats::totalNanos).reversed());
+            text.append("Slowest files:").append(System.lineSeparator());
+            for (FileStats file : slowest.subList(0, Math.min(SLOWEST_FILES, slowest.size()))) {
+                text.append(String.format(Locale.ROOT, "  %-40s %10.2f ms %8d tokens%n",
+                    file.file(), file.totalNanos() / 1e6, file.tokens()));
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Renders every per-file record and the totals as a JSON object. Times are in nanoseconds.
+     */
+    public String toJson() {
+        List<FileStats> all = files();
+        Totals totals = new Totals(all);
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"wallNanos\": ").append(wallNanos).append(",\n");
+        json.append("  \"totals\": {");
+        appendCounters(json, totals.tokens, totals.instructions, totals.bytesRead, totals.bytesWritten,
+            totals.lexNanos, totals.parseNanos, totals.optimizeNanos, totals.writeNanos, totals.totalNanos);
+        json.append("},\n  \"files\": [");
+        for (int i = 0; i < all.size(); i++) {
+            FileStats file = all.get(i);
+            json.append(i == 0 ? "\n" : ",\n").append("    {\"file\": ");
+            appendString(json, file.file());
+            json.append(", ");
+            appendCounters(json, file.tokens(), file.instructions(), file.bytesRead(), file.bytesWritten(),
+                file.lexNanos(), file.parseNanos(), file.optimizeNanos(), file.writeNanos(), file.totalNanos());
+            json.append('}');
+        }
+        json.append(all.isEmpty() ? "]\n}\n" : "\n  ]\n}\n");
+        return json.toString();
+    }
+
+    private static void phase(StringBuilder text, String name, long nanos, long totalNanos) {
+        double share = totalNanos > 0 ? 100.0 * nanos / totalNanos : 0;
+        text.append(String.format(Locale.ROOT, "%-16s %12.2f %7.1f%%%n", name, nanos / 1e6, share));
+    }
+
+    private static void appendCounters(StringBuilder json, long tokens, long instructions, long bytesRead,
+                                       long bytesWritten, long lexNanos, long parseNanos, long optimizeNanos,
+                                       long writeNanos, long totalNanos) {
+        json.append("\"tokens\": ").append(tokens)
+            .append(", \"instructions\": ").append(instructions)
+            .append(", \"bytesRead\": ").append(bytesRead)
+            .append(", \"bytesWritten\": ").append(bytesWritten)
+            .append(", \"lexNanos\": ").append(lexNanos)
+            .append(", \"parseNanos\": ").append(parseNanos)
+            .append(", \"optimizeNanos\": ").append(optimizeNanos)
+            .append(", \"writeNanos\": ").append(writeNanos)
+            .append(", \"totalNanos\": ").append(totalNanos);
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    // Sums over all files
+    private static class Totals {
+        long tokens;
+        long instructions;
+        long bytesRead;
+        long bytesWritten;
+        long lexNanos;
+        long parseNanos;
+        long optimizeNanos;
+        long writeNanos;
+        long totalNanos;
+
+        Totals(List<FileStats> files) {
+            for (FileStats file : files) {
+                tokens += file.tokens();
+                instructions += file.instructions();
+                bytesRead += file.bytesRead();
+                bytesWritten += file.bytesWritten();
+                lexNanos += file.lexNanos();
+                parseNanos += file.parseNanos();
+                optimizeNanos += file.optimizeNanos();
+                writeNanos += file.writeNanos();
+                totalNanos += file.totalNanos();
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JDK Flight Recorder event for compiling one constructor, function or method,
+ * emitted by CompilationEngine.compileSubroutine.
+ */
+@Name("jack.CompileSubroutine")
+@Label("Compile Subroutine")
+@Category("Jack Compiler")
+@Description("Parsing and code generation of one subroutine")
+public class CompileSubroutineEvent extends Event {
+    @Label("Class")
+    String className;
+
+    @Label("Subroutine")
+    String subroutine;
+
+    @Label("Instructions")
+    @Description("VM instructions generated, before peephole optimization")
+    int instructions;
+}
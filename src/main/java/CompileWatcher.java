@@ -0,0 +1,120 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the compiler resident and recompiles .jack files as they change.
+ * Events are collected until the directory has been quiet for a short debounce
+ * interval, so a save that arrives as several events costs one compile. Since the
+ * JVM stays up, every compile after the first few runs on warmed-up code.
+ */
+public class CompileWatcher {
+    private static final long DEBOUNCE_MILLIS = 25;
+
+    private final Path directory;
+    private final String onlyFile;  // File name to watch, or null for every .jack file
+    private final CompilerOptions options;
+
+    /**
+     * Creates a watcher for the given .jack file or directory of .jack files.
+     */
+    public CompileWatcher(File input, CompilerOptions options) {
+        File absolute = input.getAbsoluteFile();
+        if (absolute.isDirectory()) {
+            this.directory = absolute.toPath();
+            this.onlyFile = null;
+        } else {
+            this.directory = absolute.getParentFile().toPath();
+            this.onlyFile = absolute.getName();
+        }
+        this.options = options;
+    }
+
+    /**
+     * Watches for changes until the thread is interrupted.
+     * Compile errors are reported and do not stop the watcher.
+     */
+    public void run() throws IOException {
+        try (WatchService watcher = directory.getFileSystem().newWatchService()) {
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            System.out.println("Watching " + directory + " for changes");
+            while (true) {
+                WatchKey key = watcher.take();
+                long firstEvent = System.nanoTime();
+                Set<String> changed = new TreeSet<>();
+                boolean overflow = false;
+                while (key != null) {
+                    overflow |= collect(key, changed);
+                    if (!key.reset()) {
+                        throw new IOException("Directory is no longer accessible: " + directory);
+                    }
+                    key = watcher.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                if (overflow) {
+                    // Events were lost, so every file may have changed
+                    changed.clear();
+                    String[] names = directory.toFile().list();
+                    if (names != null) {
+                        for (String name : names) {
+                            if (isWatched(name)) changed.add(name);
+                        }
+                    }
+                }
+                if (!changed.isEmpty()) {
+                    recompile(changed, firstEvent);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Adds the watched files named by the key's events; returns true if events were lost
+    private boolean collect(WatchKey key, Set<String> changed) {
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+            String name = ((Path) event.context()).getFileName().toString();
+            if (isWatched(name)) {
+                changed.add(name);
+            }
+        }
+        return overflow;
+    }
+
+    private void recompile(Set<String> changed, long firstEvent) throws IOException {
+        for (String name : changed) {
+            File jackFile = directory.resolve(name).toFile();
+            if (!jackFile.isFile()) continue;  // Deleted again before the burst settled
+            long start = System.nanoTime();
+            try {
+                JackCompiler.compileFile(jackFile, options);
+                System.out.println("Compiled: " + name + " in " + millis(System.nanoTime() - start) + " ms");
+            } catch (IOException | RuntimeException e) {
+                System.err.println(Diagnostic.of(jackFile.getPath(), e));
+            }
+        }
+        JackCompiler.writeStringPool(directory.toFile(), options);
+        System.out.println("Change handled in " + millis(System.nanoTime() - firstEvent)
+            + " ms (including " + DEBOUNCE_MILLIS + " ms debounce)");
+    }
+
+    private boolean isWatched(String name) {
+        return onlyFile != null ? onlyFile.equals(name) : name.endsWith(".jack");
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.2f", nanos / 1_000_000.0);
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * Settings that control how a class is compiled.
+ * The defaults reproduce the plain single-threaded compiler.
+ */
+public class CompilerOptions {
+    private boolean backgroundLexing;
+    private boolean directOutput;
+    private PeepholeOptimizer peepholeOptimizer;
+    private boolean constantFolding;
+    private boolean strengthReduction;
+    private boolean literalPooling;
+    private StringPool sharedStringPool;
+    private CompileStats statistics;
+    private boolean syntaxTree;
+
+    /**
+     * Creates options with every setting at its default.
+     */
+    public CompilerOptions() {
+        backgroundLexing = false;
+        directOutput = false;
+        peepholeOptimizer = null;
+        constantFolding = true;
+        strengthReduction = false;
+        literalPooling = false;
+        sharedStringPool = null;
+        statistics = null;
+        syntaxTree = false;
+    }
+
+    /**
+     * Returns whether the tokenizer runs on its own thread, ahead of the engine.
+     */
+    public boolean isBackgroundLexing() {
+        return backgroundLexing;
+    }
+
+    /**
+     * Sets whether the tokenizer runs on its own thread, ahead of the engine.
+     */
+    public CompilerOptions setBackgroundLexing(boolean backgroundLexing) {
+        this.backgroundLexing = backgroundLexing;
+        return this;
+    }
+
+    /**
+     * Returns whether .vm files are encoded into a direct buffer and written through a FileChannel.
+     */
+    public boolean isDirectOutput() {
+        return directOutput;
+    }
+
+    /**
+     * Sets whether .vm files are encoded into a direct buffer and written through a FileChannel.
+     */
+    public CompilerOptions setDirectOutput(boolean directOutput) {
+        this.directOutput = directOutput;
+        return this;
+    }
+
+    /**
+     * Returns the optimizer run over each class's VM code before it is written, or null for none.
+     */
+    public PeepholeOptimizer getPeepholeOptimizer() {
+        return peepholeOptimizer;
+    }
+
+    /**
+     * Sets the optimizer run over each class's VM code before it is written, or null for none.
+     */
+    public CompilerOptions setPeepholeOptimizer(PeepholeOptimizer peepholeOptimizer) {
+        this.peepholeOptimizer = peepholeOptimizer;
+        return this;
+    }
+
+    /**
+     * Returns whether constant integer and boolean subexpressions are evaluated at compile time.
+     */
+    public boolean isConstantFolding() {
+        return constantFolding;
+    }
+
+    /**
+     * Sets whether constant integer and boolean subexpressions are evaluated at compile time.
+     */
+    public CompilerOptions setConstantFolding(boolean constantFolding) {
+        this.constantFolding = constantFolding;
+        return this;
+    }
+
+    /**
+     * Returns whether multiplications and divisions by constants are replaced with cheaper code.
+     */
+    public boolean isStrengthReduction() {
+        return strengthReduction;
+    }
+
+    /**
+     * Sets whether multiplications and divisions by constants are replaced with cheaper code.
+     */
+    public CompilerOptions setStrengthReduction(boolean strengthReduction) {
+        this.strengthReduction = strengthReduction;
+        return this;
+    }
+
+    /**
+     * Returns whether each distinct string constant in a class is built once and
+     * kept in a static. Pooled strings are shared and must not be disposed.
+     */
+    public boolean isLiteralPooling() {
+        return literalPooling;
+    }
+
+    /**
+     * Sets whether each distinct string constant in a class is built once and
+     * kept in a static. Pooled strings are shared and must not be disposed.
+     */
+    public CompilerOptions setLiteralPooling(boolean literalPooling) {
+        this.literalPooling = literalPooling;
+        return this;
+    }
+
+    /**
+     * Returns the whole-program string pool, or null if literals are not deduplicated across classes.
+     */
+    public StringPool getSharedStringPool() {
+        return sharedStringPool;
+    }
+
+    /**
+     * Sets a whole-program string pool that deduplicates literals across classes.
+     * Takes precedence over per-class literal pooling.
+     */
+    public CompilerOptions setSharedStringPool(StringPool sharedStringPool) {
+        this.sharedStringPool = sharedStringPool;
+        return this;
+    }
+
+    /**
+     * Returns the collector that per-file statistics are reported to, or null if they are not collected.
+     */
+    public CompileStats getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Sets the collector that per-file statistics are reported to, or null to not collect them.
+     */
+    public CompilerOptions setStatistics(CompileStats statistics) {
+        this.statistics = statistics;
+        return this;
+    }
+
+    /**
+     * Returns a short description of every setting that changes the generated code,
+     * used to tell whether previously written .vm files are still valid.
+     */
+    public String fingerprint() {
+        return "peephole=" + (peepholeOptimizer != null)
+            + ",fold=" + constantFolding
+            + ",reduce=" + strengthReduction
+            + ",pool=" + (sharedStringPool != null ? "global" : literalPooling ? "class" : "none");
+    }
+
+    /**
+     * Returns whether each class is parsed into a SyntaxTree before its code is
+     * generated, instead of generating code while parsing.
+     */
+    public boolean isSyntaxTree() {
+        return syntaxTree;
+    }
+
+    /**
+     * Sets whether each class is parsed into a SyntaxTree before its code is
+     * generated, instead of generating code while parsing.
+     */
+    public CompilerOptions setSyntaxTree(boolean syntaxTree) {
+        this.syntaxTree = syntaxTree;
+        return this;
+    }
+}
@@ -0,0 +1,89 @@
+import java.io.Serializable;
+
+/**
+ * A compile error in a structured form: where it happened and, for syntax errors,
+ * what the compiler expected and what it found instead. Line and column count
+ * from 1 and are 0 when the error is not tied to a token, such as an unreadable file.
+ */
+public class Diagnostic implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String file;
+    private final int line;
+    private final int column;
+    private final String expected;  // null unless the error is a syntax error
+    private final String actual;    // null unless the error is a syntax error
+    private final String message;
+
+    /**
+     * Creates a diagnostic for a syntax error: expected is what the grammar allows
+     * at this point, actual a description of the token found.
+     */
+    public Diagnostic(String file, int line, int column, String expected, String actual) {
+        this(file, line, column, expected, actual, "expected " + expected + ", got " + actual);
+    }
+
+    /**
+     * Creates a diagnostic for any other error.
+     */
+    public Diagnostic(String file, int line, int column, String message) {
+        this(file, line, column, null, null, message);
+    }
+
+    private Diagnostic(String file, int line, int column, String expected, String actual, String message) {
+        this.file = file;
+        this.line = line;
+        this.column = column;
+        this.expected = expected;
+        this.actual = actual;
+        this.message = message;
+    }
+
+    /**
+     * Returns the diagnostic carried by the given failure or one of its causes,
+     * or a diagnostic for the given file with the failure's message.
+     */
+    public static Diagnostic of(String file, Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CompileError) {
+                return ((CompileError) cause).diagnostic();
+            }
+        }
+        String message = failure.getMessage() != null ? failure.getMessage() : failure.toString();
+        return new Diagnostic(file, 0, 0, message);
+    }
+
+    public String file() {
+        return file;
+    }
+
+    public int line() {
+        return line;
+    }
+
+    public int column() {
+        return column;
+    }
+
+    public String expected() {
+        return expected;
+    }
+
+    public String actual() {
+        return actual;
+    }
+
+    public String message() {
+        return message;
+    }
+
+    /**
+     * Returns the diagnostic as "file:line:column: error: message", the form
+     * editors and CI log parsers recognize.
+     */
+    @Override
+    public String toString() {
+        String location = line > 0 ? file + ":" + line + ":" + column : file;
+        return location + ": error: " + message;
+    }
+}
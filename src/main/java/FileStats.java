@@ -0,0 +1,86 @@
+/**
+ * Counters and phase times for one compiled class.
+ * Only collected when CompilerOptions has a CompileStats to report to.
+ */
+public class FileStats {
+    private final String file;
+    private final long tokens;
+    private final long instructions;
+    private final long bytesRead;
+    private final long bytesWritten;
+    private final long lexNanos;
+    private final long parseNanos;
+    private final long optimizeNanos;
+    private final long writeNanos;
+    private final long totalNanos;
+
+    /**
+     * Creates the record for one class. Times are in nanoseconds; parseNanos covers
+     * parsing and code generation, with lexing excluded unless it ran in the background.
+     */
+    public FileStats(String file, long tokens, long instructions, long bytesRead, long bytesWritten,
+                     long lexNanos, long parseNanos, long optimizeNanos, long writeNanos, long totalNanos) {
+        this.file = file;
+        this.tokens = tokens;
+        this.instructions = instructions;
+        this.bytesRead = bytesRead;
+        this.bytesWritten = bytesWritten;
+        this.lexNanos = lexNanos;
+        this.parseNanos = parseNanos;
+        this.optimizeNanos = optimizeNanos;
+        this.writeNanos = writeNanos;
+        this.totalNanos = totalNanos;
+    }
+
+    public String file() {
+        return file;
+    }
+
+    public long tokens() {
+        return tokens;
+    }
+
+    /**
+     * Returns the number of VM instructions written, after optimization.
+     */
+    public long instructions() {
+        return instructions;
+    }
+
+    public long bytesRead() {
+        return bytesRead;
+    }
+
+    public long bytesWritten() {
+        return bytesWritten;
+    }
+
+    public long lexNanos() {
+        return lexNanos;
+    }
+
+    public long parseNanos() {
+        return parseNanos;
+    }
+
+    public long optimizeNanos() {
+        return optimizeNanos;
+    }
+
+    public long writeNanos() {
+        return writeNanos;
+    }
+
+    public long totalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * Returns a copy of this record for a class whose code was written out in a later,
+     * separate step: with the given instruction and byte counts, and the write time added.
+     */
+    public FileStats withOutput(long instructions, long bytesWritten, long writeNanos) {
+        return new FileStats(file, tokens, instructions, bytesRead, bytesWritten, lexNanos, parseNanos,
+            optimizeNanos, this.writeNanos + writeNanos, totalNanos + writeNanos);
+    }
+}
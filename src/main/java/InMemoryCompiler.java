@@ -0,0 +1,190 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Library entry point that compiles Jack source held in memory, without touching
+ * the file system. Sources can be given as text, a Reader or UTF-8 bytes, and the
+ * VM code comes back as text, into a Writer or as UTF-8 bytes in a ByteBuffer.
+ * Every call uses its own engine, so one InMemoryCompiler may be used from
+ * several threads at once.
+ */
+public class InMemoryCompiler {
+    private static final String SOURCE_NAME = "<memory>";
+    static final String STREAM_NAME = "<stream>";
+
+    private final CompilerOptions options;
+
+    /**
+     * Creates a compiler with the default options.
+     */
+    public InMemoryCompiler() {
+        this(new CompilerOptions());
+    }
+
+    /**
+     * Creates a compiler with the given options. Options that only concern files,
+     * such as direct output, have no effect.
+     */
+    public InMemoryCompiler(CompilerOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * Compiles one class and returns its VM code.
+     */
+    public CharSequence compile(CharSequence source) throws IOException {
+        StringBuilder vmCode = new StringBuilder();
+        compile(JackTokenizer.fromSource(source, SOURCE_NAME)).writeTo(vmCode);
+        return vmCode;
+    }
+
+    /**
+     * Compiles one class and writes its VM code to the given Writer, which is left open.
+     */
+    public void compile(CharSequence source, Writer out) throws IOException {
+        compile(JackTokenizer.fromSource(source, SOURCE_NAME)).writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Compiles the class read from the given Reader and returns its VM code.
+     * The Reader is read to the end but not closed.
+     */
+    public CharSequence compile(Reader source) throws IOException {
+        StringBuilder vmCode = new StringBuilder();
+        compile(JackTokenizer.fromReader(source, SOURCE_NAME)).writeTo(vmCode);
+        return vmCode;
+    }
+
+    /**
+     * Compiles the class read from the given Reader and writes its VM code to the
+     * given Writer. Neither is closed.
+     */
+    public void compile(Reader source, Writer out) throws IOException {
+        compile(JackTokenizer.fromReader(source, SOURCE_NAME)).writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Compiles the class held as UTF-8 in the remaining bytes of source and puts its
+     * VM code, as UTF-8, into out. Both buffers' positions are advanced.
+     * Throws BufferOverflowException if out is too small; out's contents are then undefined.
+     */
+    public void compile(ByteBuffer source, ByteBuffer out) throws IOException {
+        compile(JackTokenizer.fromBytes(source, SOURCE_NAME)).encodeTo(out);
+    }
+
+    /**
+     * Compiles many classes, using up to the given number of worker threads.
+     * Returns the VM code of every source under the same key, in the iteration
+     * order of the input. If a whole-program string pool is set, its class is
+     * included under StringPool.CLASS_NAME. The first failure is rethrown, with
+     * the key of the failing source in its message.
+     */
+    public Map<String, CharSequence> compileAll(Map<String, ? extends CharSequence> sources, int jobs) throws IOException {
+        List<String> names = new ArrayList<>(sources.keySet());
+        Map<String, CharSequence> results = new LinkedHashMap<>();
+        if (jobs <= 1 || names.size() <= 1) {
+            for (String name : names) {
+                results.put(name, compileNamed(name, sources.get(name)));
+            }
+        } else {
+            ExecutorService pool = Executors.newWorkStealingPool(Math.min(jobs, names.size()));
+            try {
+                List<Future<CharSequence>> pending = new ArrayList<>(names.size());
+                for (String name : names) {
+                    CharSequence source = sources.get(name);
+                    pending.add(pool.submit(() -> compileNamed(name, source)));
+                }
+                for (int i = 0; i < names.size(); i++) {
+                    results.put(names.get(i), JackCompiler.await(pending.get(i)));
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+
+        StringPool stringPool = options.getSharedStringPool();
+        if (stringPool != null && stringPool.size() > 0) {
+            VMWriter writer = new VMWriter();
+            stringPool.writeClass(writer);
+            StringBuilder vmCode = new StringBuilder();
+            writer.code().writeTo(vmCode);
+            results.put(StringPool.CLASS_NAME, vmCode);
+        }
+        return results;
+    }
+
+    /**
+     * Compiles every class in a stream of concatenated Jack classes, as split by
+     * ClassSplitter, and writes their VM code to out as each class is complete.
+     * Each class's code is preceded by a header line "// ==> Name.vm <==", which a
+     * VM translator skips as a comment and which ends in the same line separator as
+     * the code. The output is flushed after every class. If a whole-program string
+     * pool is set, its class follows the last one. Neither stream is closed.
+     * Returns the number of classes compiled.
+     */
+    public int compileStream(Reader in, Writer out) throws IOException {
+        ClassSplitter splitter = new ClassSplitter(in, STREAM_NAME);
+        int classes = 0;
+        for (String source = splitter.next(); source != null; source = splitter.next()) {
+            JackTokenizer tokenizer = JackTokenizer.fromSource(source, STREAM_NAME, splitter.startLine());
+            VMWriter writer = new VMWriter();
+            try {
+                CompilationEngine engine = new CompilationEngine(tokenizer, writer, options);
+                engine.compileClass();
+                writeSection(engine.className(), writer.code(), out);
+            } catch (CompileError e) {
+                throw e;  // Already located within the stream
+            } catch (IOException e) {
+                throw new IOException(STREAM_NAME + ":" + splitter.startLine() + ": " + e.getMessage(), e);
+            } catch (RuntimeException e) {
+                throw new IllegalStateException(STREAM_NAME + ":" + splitter.startLine() + ": " + e.getMessage(), e);
+            }
+            classes++;
+        }
+
+        StringPool stringPool = options.getSharedStringPool();
+        if (stringPool != null && stringPool.size() > 0) {
+            VMWriter writer = new VMWriter();
+            stringPool.writeClass(writer);
+            writeSection(StringPool.CLASS_NAME, writer.code(), out);
+        }
+        return classes;
+    }
+
+    private static void writeSection(String className, VMCode code, Writer out) throws IOException {
+        out.write("// ==> " + className + ".vm <==" + System.lineSeparator());
+        code.writeTo(out);
+        out.flush();
+    }
+
+    private CharSequence compileNamed(String name, CharSequence source) throws IOException {
+        try {
+            StringBuilder vmCode = new StringBuilder();
+            compile(JackTokenizer.fromSource(source, name)).writeTo(vmCode);
+            return vmCode;
+        } catch (CompileError e) {
+            throw e;  // Already names the source
+        } catch (IOException e) {
+            throw new IOException(name + ": " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            throw new IllegalStateException(name + ": " + e.getMessage(), e);
+        }
+    }
+
+    private VMCode compile(JackTokenizer tokenizer) throws IOException {
+        VMWriter writer = new VMWriter();
+        new CompilationEngine(tokenizer, writer, options).compileClass();
+        return writer.code();
+    }
+}
@@ -1,43 +1,460 @@
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
 
 public class JackCompiler {
+    private static final String USAGE =
+        "Usage: java JackCompiler [--jobs N] [--lex-thread] [--nio] [--peephole] [--no-fold]\n"
+        + "                         [--strength-reduce] [--pool-strings | --pool-strings-global] [--ast]\n"
+        + "                         [--incremental] [--watch] [--keep-going] [--whole-program]\n"
+        + "                         [--stats] [--stats-json FILE]\n"
+        + "                         [--zip-out FILE] [--flatten] [--compression-level 0-9]\n"
+        + "                         <input file/directory/.zip archive | - to compile stdin to stdout>";
+
     public static void main(String[] args) {
-        if (args.length != 1) {
-            System.err.println("Usage: java JackCompiler <input file/directory>");
-            System.exit(1);
+        int jobs = Runtime.getRuntime().availableProcessors();
+        CompilerOptions options = new CompilerOptions();
+        boolean incremental = false;
+        boolean watch = false;
+        boolean keepGoing = false;
+        boolean wholeProgram = false;
+        boolean printStats = false;
+        String statsJsonPath = null;
+        String zipOutPath = null;
+        boolean flatten = false;
+        int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+        String inputPath = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--jobs") && i + 1 < args.length) {
+                jobs = parseJobs(args[++i]);
+            } else if (applyOption(args[i], options)) {
+                continue;
+            } else if (args[i].equals("--incremental")) {
+                incremental = true;
+            } else if (args[i].equals("--watch")) {
+                watch = true;
+            } else if (args[i].equals("--keep-going")) {
+                keepGoing = true;
+            } else if (args[i].equals("--whole-program")) {
+                wholeProgram = true;
+            } else if (args[i].equals("--stats")) {
+                printStats = true;
+            } else if (args[i].equals("--stats-json") && i + 1 < args.length) {
+                statsJsonPath = args[++i];
+            } else if (args[i].equals("--zip-out") && i + 1 < args.length) {
+                zipOutPath = args[++i];
+            } else if (args[i].equals("--flatten")) {
+                flatten = true;
+            } else if (args[i].equals("--compression-level") && i + 1 < args.length) {
+                compressionLevel = parseCompressionLevel(args[++i]);
+            } else if (inputPath == null && (args[i].equals("-") || !args[i].startsWith("-"))) {
+                inputPath = args[i];
+            } else {
+                usage();
+            }
         }
+        if (inputPath == null) {
+            usage();
+        }
+        if (incremental && options.getSharedStringPool() != null) {
+            // Skipped classes would never register their literals with the pool
+            System.err.println("--incremental cannot be combined with --pool-strings-global");
+            usage();
+        }
+        if (inputPath.equals("-")) {
+            if (incremental || watch || keepGoing || wholeProgram || printStats || statsJsonPath != null) {
+                // These write files or print to stdout, which carries the VM code;
+                // a stream stops at its first error
+                System.err.println("Compiling stdin cannot be combined with --incremental, --watch, --keep-going,"
+                    + " --whole-program or --stats");
+                usage();
+            }
+            compileStandardInput(options);
+            return;
+        }
+        boolean archive = inputPath.endsWith(".zip");
+        if (!archive && (zipOutPath != null || flatten || compressionLevel != Deflater.DEFAULT_COMPRESSION)) {
+            System.err.println("--zip-out, --flatten and --compression-level need a .zip input");
+            usage();
+        }
+        if (archive && (incremental || watch || options.getSharedStringPool() != null)) {
+            System.err.println("A .zip input cannot be combined with --incremental, --watch or --pool-strings-global");
+            usage();
+        }
+        if (wholeProgram && (archive || incremental || watch || keepGoing)) {
+            // Reachability depends on every class, so all of them are compiled, and must compile, together
+            System.err.println("--whole-program cannot be combined with a .zip input, --incremental, --watch or --keep-going");
+            usage();
+        }
+        CompileStats stats = null;
+        if (printStats || statsJsonPath != null) {
+            stats = new CompileStats();
+            options.setStatistics(stats);
+        }
+        Map<File, Diagnostic> failures = new LinkedHashMap<>();
         try {
-            File input = new File(args[0]);
+            long start = System.nanoTime();
+            File input = new File(inputPath);
             if (!input.exists()) {
                 throw new IOException("Input file/directory does not exist: " + input);
             }
-            if (input.isFile() && input.getName().endsWith(".jack")) {
+            File outputDirectory = input.isDirectory() ? input : input.getAbsoluteFile().getParentFile();
+            if (archive) {
+                Path output = zipOutPath != null ? Paths.get(zipOutPath) : archiveOutputFor(input.toPath());
+                List<Diagnostic> entryFailures = keepGoing ? new ArrayList<>() : null;
+                int classes = new ArchiveCompiler(options, jobs, flatten, compressionLevel)
+                    .compile(input.toPath(), output, entryFailures);
+                System.out.println("Compiled: " + classes + " classes from " + input.getName() + " into " + output);
+                if (entryFailures != null) {
+                    for (Diagnostic diagnostic : entryFailures) {
+                        System.err.println(diagnostic);
+                        failures.put(new File(diagnostic.file()), diagnostic);
+                    }
+                }
+            } else if (wholeProgram) {
+                File[] jackFiles = input.isDirectory()
+                    ? input.listFiles((directory, fileName) -> fileName.endsWith(".jack"))
+                    : new File[] {input};
+                if (jackFiles != null) {
+                    Arrays.sort(jackFiles);
+                    compileWholeProgram(jackFiles, jobs, options);
+                }
+            } else if (input.isFile() && input.getName().endsWith(".jack")) {
                 // Handle single file
-                compileFile(input);
+                if (incremental) {
+                    failures = compileIncrementally(new File[] {input}, outputDirectory, jobs, options, keepGoing);
+                } else if (keepGoing) {
+                    failures = compileFiles(new File[] {input}, 1, options, true);
+                } else {
+                    try {
+                        compileFile(input, options);
+                    } catch (RuntimeException e) {
+                        throw located(input, e);
+                    }
+                }
             } else {
                 File[] jackFiles = input.listFiles((directory, fileName) -> fileName.endsWith(".jack"));
                 if (jackFiles != null) {
-                    for (File jackFile : jackFiles) {
-                        compileFile(jackFile);
-                        System.out.println("Compiled: " + jackFile.getName());
+                    Arrays.sort(jackFiles);
+                    if (incremental) {
+                        failures = compileIncrementally(jackFiles, outputDirectory, jobs, options, keepGoing);
+                    } else {
+                        failures = compileFiles(jackFiles, jobs, options, keepGoing);
                     }
                 }
             }
+            writeStringPool(outputDirectory, options);
+            if (stats != null) {
+                stats.setWallNanos(System.nanoTime() - start);
+                reportStats(stats, printStats, statsJsonPath);
+                // Statistics cover the initial compile; watching would collect them forever
+                options.setStatistics(null);
+            }
+            if (!failures.isEmpty()) {
+                System.err.println(failures.size() + (failures.size() == 1 ? " file" : " files") + " failed to compile");
+            }
+            if (watch) {
+                new CompileWatcher(input, options).run();
+            }
         } catch (IOException e) {
             System.err.println("Error: " + e.getMessage());
             System.exit(1);
+        } catch (CompileError e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        } catch (RuntimeException e) {
+            // A failure outside any one file, such as writing the string pool
+            System.err.println(Diagnostic.of(inputPath, e));
+            System.exit(1);
+        }
+        if (!failures.isEmpty()) {
+            System.exit(1);
         }
     }
 
-    private static void compileFile(File inputFile) throws IOException {
-        // Create output file with .vm suffix instead of .xml
-        String outputPath = inputFile.getAbsolutePath();
-        outputPath = outputPath.substring(0, outputPath.lastIndexOf(".")) + ".vm";
-        File outputFile = new File(outputPath);
+    /**
+     * Compiles the Jack classes read from stdin and streams their VM code to stdout,
+     * one framed section per class, as each class is complete.
+     */
+    private static void compileStandardInput(CompilerOptions options) {
+        Reader in = new InputStreamReader(System.in, StandardCharsets.UTF_8);
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        try {
+            new InMemoryCompiler(options).compileStream(in, out);
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        } catch (CompileError e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        } catch (RuntimeException e) {
+            System.err.println(Diagnostic.of(InMemoryCompiler.STREAM_NAME, e));
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Applies a flag that maps onto a CompilerOptions setting.
+     * Returns false if the flag is not one of them.
+     */
+    static boolean applyOption(String flag, CompilerOptions options) {
+        switch (flag) {
+            case "--lex-thread": options.setBackgroundLexing(true); return true;
+            case "--nio": options.setDirectOutput(true); return true;
+            case "--peephole": options.setPeepholeOptimizer(PeepholeOptimizer.withDefaultRules()); return true;
+            case "--no-fold": options.setConstantFolding(false); return true;
+            case "--strength-reduce": options.setStrengthReduction(true); return true;
+            case "--pool-strings": options.setLiteralPooling(true); return true;
+            case "--pool-strings-global": options.setSharedStringPool(new StringPool()); return true;
+            case "--ast": options.setSyntaxTree(true); return true;
+            default: return false;
+        }
+    }
+
+    /**
+     * Compiles the given files, using up to the given number of worker threads.
+     * Progress lines are printed in the order of the input array regardless of
+     * the order in which the workers finish. Unless keepGoing is set the first
+     * failure is rethrown; with it, every file is attempted, each failure is
+     * reported and its stale .vm file removed, and the failures are returned.
+     */
+    static Map<File, Diagnostic> compileFiles(File[] jackFiles, int jobs, CompilerOptions options, boolean keepGoing) throws IOException {
+        Map<File, Diagnostic> failures = new LinkedHashMap<>();
+        if (jobs <= 1 || jackFiles.length <= 1) {
+            for (File jackFile : jackFiles) {
+                try {
+                    int removed = compileFile(jackFile, options);
+                    System.out.println(progressLine(jackFile, removed, options));
+                } catch (IOException e) {
+                    if (!keepGoing) throw e;
+                    failed(jackFile, e, failures);
+                } catch (RuntimeException e) {
+                    if (!keepGoing) throw located(jackFile, e);
+                    failed(jackFile, e, failures);
+                }
+            }
+            return failures;
+        }
+
+        // Every file gets its own engine, tokenizer, symbol table and writer,
+        // so the files can be compiled independently of each other.
+        ExecutorService pool = Executors.newWorkStealingPool(Math.min(jobs, jackFiles.length));
+        try {
+            List<Future<Integer>> results = new ArrayList<>(jackFiles.length);
+            for (File jackFile : jackFiles) {
+                results.add(pool.submit(() -> compileFile(jackFile, options)));
+            }
+            for (int i = 0; i < jackFiles.length; i++) {
+                try {
+                    int removed = await(results.get(i));
+                    System.out.println(progressLine(jackFiles[i], removed, options));
+                } catch (IOException e) {
+                    if (!keepGoing) throw e;
+                    failed(jackFiles[i], e, failures);
+                } catch (RuntimeException e) {
+                    if (!keepGoing) throw located(jackFiles[i], e);
+                    failed(jackFiles[i], e, failures);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return failures;
+    }
+
+    // Any other failure, such as a bug in the compiler, is reported against the file that triggered it
+    private static CompileError located(File jackFile, RuntimeException failure) {
+        if (failure instanceof CompileError) return (CompileError) failure;
+        return new CompileError(Diagnostic.of(jackFile.getPath(), failure), failure);
+    }
+
+    private static void failed(File jackFile, Exception failure, Map<File, Diagnostic> failures) throws IOException {
+        Diagnostic diagnostic = Diagnostic.of(jackFile.getPath(), failure);
+        failures.put(jackFile, diagnostic);
+        System.out.println("Failed: " + jackFile.getName());
+        System.err.println(diagnostic);
+        // A .vm file left from an earlier compile would no longer match its source
+        Files.deleteIfExists(outputFileFor(jackFile).toPath());
+    }
+
+    /**
+     * Compiles the given files as one program, leaving out the subroutines that
+     * the program cannot reach, and reports what was left out.
+     */
+    static void compileWholeProgram(File[] jackFiles, int jobs, CompilerOptions options) throws IOException {
+        WholeProgramCompiler compiler = new WholeProgramCompiler(options, jobs);
+        compiler.compile(jackFiles);
+        String entryPoints = String.join(" or ", compiler.entryPoints());
+        for (File jackFile : jackFiles) {
+            if (compiler.omittedFiles().contains(jackFile)) {
+                System.out.println("Omitted: " + jackFile.getName() + " (nothing reachable from "
+                    + entryPoints + ")");
+            } else {
+                System.out.println("Compiled: " + jackFile.getName());
+            }
+        }
+        for (String subroutine : compiler.removedSubroutines()) {
+            System.out.println("Removed: " + subroutine);
+        }
+        System.out.println("Removed " + compiler.removedSubroutines().size() + " of " + compiler.subroutines()
+            + " subroutines, " + compiler.removedInstructions() + " of " + compiler.instructions()
+            + " instructions, unreachable from " + entryPoints);
+    }
+
+    /**
+     * Compiles only the files whose source changed since the last incremental compile
+     * into the given directory, then updates the directory's manifest. Files that
+     * fail to compile stay out of date, so the next run retries them.
+     */
+    static Map<File, Diagnostic> compileIncrementally(File[] jackFiles, File outputDirectory, int jobs,
+                                                      CompilerOptions options, boolean keepGoing) throws IOException {
+        CompilationCache cache = new CompilationCache(outputDirectory, options);
+        List<File> stale = new ArrayList<>();
+        for (File jackFile : jackFiles) {
+            if (!cache.isUpToDate(jackFile, outputFileFor(jackFile))) {
+                stale.add(jackFile);
+            }
+        }
+        File[] staleFiles = stale.toArray(new File[0]);
+        Map<File, Diagnostic> failures = compileFiles(staleFiles, jobs, options, keepGoing);
+        for (File jackFile : staleFiles) {
+            if (!failures.containsKey(jackFile)) {
+                cache.compiled(jackFile, outputFileFor(jackFile));
+            }
+        }
+        cache.forgetDeleted();
+        cache.save();
+        System.out.println("Incremental: " + cache.hits() + " up to date, " + (cache.misses() - failures.size()) + " compiled"
+            + (failures.isEmpty() ? "" : ", " + failures.size() + " failed"));
+        return failures;
+    }
+
+    private static void reportStats(CompileStats stats, boolean print, String jsonPath) throws IOException {
+        if (print) {
+            System.out.print(stats.summary());
+        }
+        if (jsonPath != null) {
+            Files.write(Paths.get(jsonPath), stats.toJson().getBytes(StandardCharsets.UTF_8));
+            System.out.println("Wrote: " + jsonPath);
+        }
+    }
+
+    /**
+     * Writes the whole-program string pool class next to the other .vm files, if one was used.
+     */
+    static void writeStringPool(File outputDirectory, CompilerOptions options) throws IOException {
+        StringPool pool = options.getSharedStringPool();
+        if (pool == null || pool.size() == 0) return;
+        File poolFile = new File(outputDirectory, StringPool.CLASS_NAME + ".vm");
+        pool.writeClass(poolFile.getPath());
+        System.out.println("Wrote: " + poolFile.getName() + " (" + pool.size() + " string constants)");
+    }
+
+    static String progressLine(File jackFile, int removed, CompilerOptions options) {
+        if (options.getPeepholeOptimizer() == null) {
+            return "Compiled: " + jackFile.getName();
+        }
+        return "Compiled: " + jackFile.getName() + " (peephole removed " + removed + " instructions)";
+    }
+
+    static <T> T await(Future<T> result) throws IOException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compiling", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            // A ForkJoinPool wraps checked exceptions in a plain RuntimeException, and may
+            // rethrow a copy of the task's exception, of the same class, that wraps the original
+            while (cause instanceof RuntimeException && !(cause instanceof CompileError) && cause.getCause() != null
+                    && (cause.getClass() == RuntimeException.class && cause.getCause() instanceof IOException
+                        || cause.getClass() == cause.getCause().getClass())) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof CompileError) throw (CompileError) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    private static int parseCompressionLevel(String value) {
+        try {
+            int level = Integer.parseInt(value);
+            if (level < 0 || level > 9) usage();
+            return level;
+        } catch (NumberFormatException e) {
+            usage();
+            return Deflater.DEFAULT_COMPRESSION;
+        }
+    }
+
+    private static int parseJobs(String value) {
+        try {
+            int jobs = Integer.parseInt(value);
+            if (jobs < 1) usage();
+            return jobs;
+        } catch (NumberFormatException e) {
+            usage();
+            return 1;
+        }
+    }
+
+    private static void usage() {
+        System.err.println(USAGE);
+        System.exit(1);
+    }
+
+    // Returns the number of instructions removed by the peephole optimizer
+    static int compileFile(File inputFile, CompilerOptions options) throws IOException {
+        File outputFile = outputFileFor(inputFile);
+        CompileFileEvent event = new CompileFileEvent();
+        event.begin();
 
         // Create compilation engine and compile the class
-        CompilationEngine engine = new CompilationEngine(inputFile, outputFile);
+        CompilationEngine engine = new CompilationEngine(inputFile, outputFile, options);
         engine.compileClass();
+        int removed = engine.removedInstructions();
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = inputFile.getPath();
+            event.outputFile = outputFile.getPath();
+            event.removedInstructions = removed;
+            event.commit();
+        }
+        return removed;
+    }
+
+    // Programs.zip compiles into Programs-vm.zip next to it
+    private static Path archiveOutputFor(Path inputArchive) {
+        String name = inputArchive.getFileName().toString();
+        return inputArchive.resolveSibling(name.substring(0, name.length() - ".zip".length()) + "-vm.zip");
+    }
+
+    static File outputFileFor(File inputFile) {
+        // Create output file with .vm suffix instead of .xml
+        String outputPath = inputFile.getAbsolutePath();
+        return new File(outputPath.substring(0, outputPath.lastIndexOf(".")) + ".vm");
     }
 }
@@ -0,0 +1,382 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Writes random but valid Jack programs, for scaling tests and benchmarks.
+ * The output depends only on the seed and the size settings. Every class has a
+ * constructor, a dispose method, a run function and a number of int methods whose
+ * bodies are random statements; a method only calls methods declared before it,
+ * so the call graph has no cycles. Main.main calls every class's run function.
+ * Programs are meant to be compiled, not run: loops terminate, but array indexes
+ * and arithmetic are not checked.
+ */
+public class JackProgramGenerator {
+    private static final String USAGE =
+        "Usage: java JackProgramGenerator [--seed N] [--classes N] [--subroutines N | --class-size KB]\n"
+        + "                                 [--statements N] [--depth N] [--expression-depth N]\n"
+        + "                                 [--strings P] <output directory>";
+
+    private static final String[] OPERATORS = {"+", "-", "*", "/", "&", "|", "<", ">", "="};
+    private static final String[] FIELDS = {"f0", "f1", "f2"};
+    private static final String[] LOCALS = {"a", "b", "x", "y"};
+    private static final String LETTERS = "abcdefghijklmnopqrstuvwxyz ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789,.!?";
+
+    private long seed = 1;
+    private int classes = 4;
+    private int subroutines = 8;
+    private long classSize = 0;       // Target size of each class in characters, 0 to use subroutines
+    private int statements = 20;      // Top-level statements per subroutine
+    private int depth = 3;            // Maximum nesting of if/while blocks
+    private int expressionDepth = 3;  // Maximum nesting of subexpressions
+    private double strings = 0.1;     // Chance that a statement prints a string literal
+
+    private Random random;
+
+    public static void main(String[] args) {
+        JackProgramGenerator generator = new JackProgramGenerator();
+        String outputPath = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (!arg.startsWith("--")) {
+                    if (outputPath != null) usage();
+                    outputPath = arg;
+                    continue;
+                }
+                if (i + 1 == args.length) usage();
+                String value = args[++i];
+                switch (arg) {
+                    case "--seed": generator.setSeed(Long.parseLong(value)); break;
+                    case "--classes": generator.setClasses(Integer.parseInt(value)); break;
+                    case "--subroutines": generator.setSubroutines(Integer.parseInt(value)); break;
+                    case "--class-size": generator.setClassSize(Long.parseLong(value) * 1024); break;
+                    case "--statements": generator.setStatements(Integer.parseInt(value)); break;
+                    case "--depth": generator.setDepth(Integer.parseInt(value)); break;
+                    case "--expression-depth": generator.setExpressionDepth(Integer.parseInt(value)); break;
+                    case "--strings": generator.setStrings(Double.parseDouble(value)); break;
+                    default: usage();
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            usage();
+        }
+        if (outputPath == null) {
+            usage();
+        }
+        try {
+            long bytes = generator.generate(new File(outputPath));
+            System.out.println("Generated " + (generator.classes + 1) + " classes, " + (bytes / 1024) + " KB in " + outputPath);
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    public JackProgramGenerator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public JackProgramGenerator setClasses(int classes) {
+        this.classes = atLeast(classes, 1, "Class count");
+        return this;
+    }
+
+    public JackProgramGenerator setSubroutines(int subroutines) {
+        this.subroutines = atLeast(subroutines, 1, "Subroutine count");
+        return this;
+    }
+
+    /**
+     * Sets the approximate size of each class in characters. Subroutines are added
+     * until it is reached; 0 uses a fixed number of subroutines instead.
+     */
+    public JackProgramGenerator setClassSize(long classSize) {
+        this.classSize = Math.max(0, classSize);
+        return this;
+    }
+
+    public JackProgramGenerator setStatements(int statements) {
+        this.statements = atLeast(statements, 1, "Statement count");
+        return this;
+    }
+
+    public JackProgramGenerator setDepth(int depth) {
+        this.depth = atLeast(depth, 0, "Depth");
+        return this;
+    }
+
+    public JackProgramGenerator setExpressionDepth(int expressionDepth) {
+        this.expressionDepth = atLeast(expressionDepth, 0, "Expression depth");
+        return this;
+    }
+
+    public JackProgramGenerator setStrings(double strings) {
+        if (strings < 0 || strings > 1) {
+            throw new IllegalArgumentException("String density must be between 0 and 1: " + strings);
+        }
+        this.strings = strings;
+        return this;
+    }
+
+    /**
+     * Writes Main.jack and the generated classes into the given directory, creating
+     * it if needed. Returns the total number of characters written.
+     */
+    public long generate(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory: " + directory);
+        }
+        random = new Random(seed);
+        long total = 0;
+        for (int i = 0; i < classes; i++) {
+            try (Writer out = new BufferedWriter(new FileWriter(new File(directory, className(i) + ".jack")), 1 << 16)) {
+                total += writeClass(out, i);
+            }
+        }
+        try (Writer out = new BufferedWriter(new FileWriter(new File(directory, "Main.jack")))) {
+            total += writeMain(out);
+        }
+        return total;
+    }
+
+    private long writeMain(Writer out) throws IOException {
+        StringBuilder text = new StringBuilder();
+        text.append("class Main {\n");
+        text.append("    function void main() {\n");
+        for (int i = 0; i < classes; i++) {
+            text.append("        do ").append(className(i)).append(".run();\n");
+        }
+        text.append("        return;\n");
+        text.append("    }\n");
+        text.append("}\n");
+        out.write(text.toString());
+        return text.length();
+    }
+
+    private long writeClass(Writer out, int index) throws IOException {
+        String name = className(index);
+        StringBuilder text = new StringBuilder();
+        text.append("/** Generated with seed ").append(seed).append(". */\n");
+        text.append("class ").append(name).append(" {\n");
+        text.append("    static int counter;\n");
+        text.append("    field int f0, f1, f2;\n\n");
+        text.append("    constructor ").append(name).append(" new(int seed) {\n");
+        text.append("        let f0 = seed;\n");
+        text.append("        let f1 = seed + 1;\n");
+        text.append("        let f2 = 0;\n");
+        text.append("        return this;\n");
+        text.append("    }\n\n");
+        text.append("    method void dispose() {\n");
+        text.append("        do Memory.deAlloc(this);\n");
+        text.append("        return;\n");
+        text.append("    }\n");
+        out.write(text.toString());
+        long written = text.length();
+
+        // Methods are streamed out one at a time, so huge classes need no huge buffers
+        int methods = 0;
+        while (classSize > 0 ? written < classSize : methods < subroutines) {
+            text.setLength(0);
+            writeMethod(text, methods);
+            out.write(text.toString());
+            written += text.length();
+            methods++;
+        }
+
+        text.setLength(0);
+        text.append("\n    function void run() {\n");
+        text.append("        var ").append(name).append(" object;\n");
+        text.append("        let object = ").append(name).append(".new(").append(random.nextInt(100)).append(");\n");
+        for (int m = 0; m < methods; m++) {
+            text.append("        let counter = counter + object.m").append(m)
+                .append("(").append(random.nextInt(100)).append(", ").append(random.nextInt(100)).append(");\n");
+        }
+        text.append("        do object.dispose();\n");
+        text.append("        return;\n");
+        text.append("    }\n");
+        text.append("}\n");
+        out.write(text.toString());
+        return written + text.length();
+    }
+
+    private void writeMethod(StringBuilder text, int index) {
+        text.append("\n    method int m").append(index).append("(int a, int b) {\n");
+        text.append("        var int x, y");
+        for (int d = 0; d <= depth; d++) {
+            text.append(", i").append(d);
+        }
+        text.append(";\n");
+        text.append("        var Array arr;\n");
+        text.append("        let arr = Array.new(8);\n");
+        text.append("        let x = a;\n");
+        text.append("        let y = b;\n");
+        for (int s = 0; s < statements; s++) {
+            writeStatement(text, index, 0, 2);
+        }
+        text.append("        do arr.dispose();\n");
+        text.append("        return x;\n");
+        text.append("    }\n");
+    }
+
+    private void writeStatement(StringBuilder text, int method, int level, int indent) {
+        if (random.nextDouble() < strings) {
+            indent(text, indent).append("do Output.printString(");
+            writeString(text);
+            text.append(");\n");
+            return;
+        }
+        int kind = random.nextInt(level < depth ? 6 : 4);
+        switch (kind) {
+            case 0:
+            case 1:
+                indent(text, indent).append("let ").append(pick(LOCALS)).append(" = ");
+                writeExpression(text, method, 0);
+                text.append(";\n");
+                break;
+            case 2:
+                indent(text, indent).append("let arr[(");
+                writeExpression(text, method, 0);
+                text.append(") & 7] = ");
+                writeExpression(text, method, 0);
+                text.append(";\n");
+                break;
+            case 3:
+                indent(text, indent).append("let ").append(pick(FIELDS)).append(" = ");
+                writeExpression(text, method, 0);
+                text.append(";\n");
+                break;
+            case 4:
+                indent(text, indent).append("if (");
+                writeExpression(text, method, 0);
+                text.append(") {\n");
+                writeBlock(text, method, level + 1, indent + 1);
+                if (random.nextBoolean()) {
+                    indent(text, indent).append("} else {\n");
+                    writeBlock(text, method, level + 1, indent + 1);
+                }
+                indent(text, indent).append("}\n");
+                break;
+            default:
+                String counter = "i" + level;
+                indent(text, indent).append("let ").append(counter).append(" = 0;\n");
+                indent(text, indent).append("while (").append(counter).append(" < ")
+                    .append(1 + random.nextInt(10)).append(") {\n");
+                writeBlock(text, method, level + 1, indent + 1);
+                indent(text, indent + 1).append("let ").append(counter).append(" = ").append(counter).append(" + 1;\n");
+                indent(text, indent).append("}\n");
+                break;
+        }
+    }
+
+    private void writeBlock(StringBuilder text, int method, int level, int indent) {
+        int count = 1 + random.nextInt(3);
+        for (int s = 0; s < count; s++) {
+            writeStatement(text, method, level, indent);
+        }
+    }
+
+    private void writeExpression(StringBuilder text, int method, int level) {
+        writeTerm(text, method, level);
+        int operators = level < expressionDepth ? random.nextInt(3) : 0;
+        for (int o = 0; o < operators; o++) {
+            text.append(' ').append(pick(OPERATORS)).append(' ');
+            writeTerm(text, method, level);
+        }
+    }
+
+    private void writeTerm(StringBuilder text, int method, int level) {
+        // Deeper levels prefer leaves, so expression size stays bounded
+        int kind = level < expressionDepth ? random.nextInt(9) : random.nextInt(3);
+        switch (kind) {
+            case 0:
+                text.append(random.nextInt(random.nextBoolean() ? 10 : 32768));
+                break;
+            case 1:
+                text.append(pick(LOCALS));
+                break;
+            case 2:
+                text.append(random.nextBoolean() ? pick(FIELDS) : "counter");
+                break;
+            case 3:
+                text.append('(');
+                writeExpression(text, method, level + 1);
+                text.append(')');
+                break;
+            case 4:
+                text.append(random.nextBoolean() ? '-' : '~');
+                writeTerm(text, method, level + 1);
+                break;
+            case 5:
+                text.append("arr[(");
+                writeExpression(text, method, level + 1);
+                text.append(") & 7]");
+                break;
+            case 6:
+                if (method > 0) {
+                    // Only earlier methods, so there is no recursion
+                    text.append('m').append(random.nextInt(method)).append('(');
+                    writeExpression(text, method, level + 1);
+                    text.append(", ");
+                    writeExpression(text, method, level + 1);
+                    text.append(')');
+                } else {
+                    text.append("Math.abs(");
+                    writeExpression(text, method, level + 1);
+                    text.append(')');
+                }
+                break;
+            case 7:
+                text.append("Math.min(");
+                writeExpression(text, method, level + 1);
+                text.append(", ");
+                writeExpression(text, method, level + 1);
+                text.append(')');
+                break;
+            default:
+                text.append(random.nextBoolean() ? "true" : "false");
+                break;
+        }
+    }
+
+    private void writeString(StringBuilder text) {
+        int length = 1 + random.nextInt(24);
+        text.append('"');
+        for (int c = 0; c < length; c++) {
+            text.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+        }
+        text.append('"');
+    }
+
+    private String pick(String[] choices) {
+        return choices[random.nextInt(choices.length)];
+    }
+
+    private static StringBuilder indent(StringBuilder text, int level) {
+        for (int i = 0; i < level; i++) {
+            text.append("    ");
+        }
+        return text;
+    }
+
+    private static String className(int index) {
+        return "Class" + index;
+    }
+
+    private static int atLeast(int value, int minimum, String name) {
+        if (value < minimum) {
+            throw new IllegalArgumentException(name + " must be at least " + minimum + ": " + value);
+        }
+        return value;
+    }
+
+    private static void usage() {
+        System.err.println(USAGE);
+        System.exit(1);
+    }
+}
@@ -1,41 +1,155 @@
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
 
+/**
+ * Splits a Jack source file into tokens.
+ * The current token is kept as an (offset, length, type) slice of the source
+ * buffer; Strings are only created when a string constant is asked for, and
+ * identifiers and keywords are resolved through a NameTable, so advancing over
+ * a large input produces next to no garbage.
+ */
 public class JackTokenizer {
-    private BufferedReader bReader;
-    private StringBuilder currentTokenBuilder;
+    private char[] source;        // Whole input, loaded once
+    private int length;           // Number of valid characters in source
+    private int position;         // Index of the current character
     private char currentChar;
-    private String currentToken;
+    private final NameTable names;
+    private final String sourceName;  // File name, or a caller-chosen name for in-memory source
+    private final long sourceSize;    // Input size in bytes, or in chars for character input
+    private int line = 1;         // Line of the current character
+    private int lineStart;        // Index of the first character of that line
+
+    // Current token
+    private boolean hasToken;
+    private int tokenStart;
+    private int tokenLength;
     private TokenType currentTokenType;
+    private int nameSlot;         // NameTable slot of the current identifier/keyword
+    private KeywordType currentKeyword;
+    private int tokenLine;
+    private int tokenColumn;
+
+    // ASCII lookup tables; anything outside them is neither a symbol nor an identifier character
+    private static final boolean[] SYMBOLS = asciiTable("{}()[].,;+-*/&|<>=~");
 
     // Initialize the tokenizer with the input file
     public JackTokenizer(File inputFile) throws IOException {
-        if (!inputFile.exists()) throw new IOException("File not found: " + inputFile);
-        bReader = new BufferedReader(new FileReader(inputFile));
-        currentTokenBuilder = new StringBuilder();
-        currentToken = null;
-        currentTokenType = null;
-        readChar(); // Load first character
+        this(read(inputFile), inputFile.toString());
     }
 
     public JackTokenizer(String inputFile) throws IOException {
         this(new File(inputFile));
     }
 
-    private void readChar() throws IOException {
-        int charAsInt = bReader.read();
-        currentChar = (charAsInt == -1) ? '\0' : (char)charAsInt; // '/0' as null for char
+    private JackTokenizer(byte[] bytes, String sourceName) {
+        this(new String(bytes, StandardCharsets.UTF_8).toCharArray(), -1, bytes.length, sourceName);
     }
 
-    public boolean hasMoreTokens() {
-        try {
-            skipWhitespaceAndComments();
-            return currentChar != '\0';
-        } catch (IOException e) {
-            return false;
+    // Tokenizes source[0, length), or the whole array if length is negative
+    private JackTokenizer(char[] source, int length, long sourceSize, String sourceName) {
+        this.source = source;
+        this.length = length < 0 ? source.length : length;
+        this.sourceSize = sourceSize < 0 ? this.length : sourceSize;
+        this.sourceName = sourceName;
+        this.names = new NameTable();
+        hasToken = false;
+        currentTokenType = null;
+        position = -1;
+        readChar(); // Load first character
+    }
+
+    /**
+     * Creates a tokenizer over Jack source held in memory.
+     * The name is only used in messages.
+     */
+    public static JackTokenizer fromSource(CharSequence source, String sourceName) {
+        return new JackTokenizer(source.toString().toCharArray(), -1, -1, sourceName);
+    }
+
+    /**
+     * Creates a tokenizer over Jack source held in memory that was cut out of a
+     * larger input, so that token lines are reported relative to that input.
+     */
+    public static JackTokenizer fromSource(CharSequence source, String sourceName, int firstLine) {
+        JackTokenizer tokenizer = fromSource(source, sourceName);
+        tokenizer.line = firstLine;
+        return tokenizer;
+    }
+
+    /**
+     * Creates a tokenizer over everything the given Reader returns.
+     * The Reader is read to the end but not closed.
+     */
+    public static JackTokenizer fromReader(Reader reader, String sourceName) throws IOException {
+        char[] buffer = new char[8192];
+        int length = 0;
+        int read;
+        while ((read = reader.read(buffer, length, buffer.length - length)) >= 0) {
+            length += read;
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
         }
+        return new JackTokenizer(buffer, length, -1, sourceName);
+    }
+
+    /**
+     * Creates a tokenizer over the UTF-8 bytes remaining in the given buffer.
+     * The buffer's position is moved to its limit.
+     */
+    public static JackTokenizer fromBytes(ByteBuffer bytes, String sourceName) {
+        int size = bytes.remaining();
+        CharBuffer chars = StandardCharsets.UTF_8.decode(bytes);
+        return new JackTokenizer(chars.array(), chars.limit(), size, sourceName);
+    }
+
+    private static byte[] read(File inputFile) throws IOException {
+        if (!inputFile.exists()) throw new IOException("File not found: " + inputFile);
+        return Files.readAllBytes(inputFile.toPath());
+    }
+
+    /**
+     * Returns the name of the file or in-memory source being tokenized.
+     */
+    public String sourceName() {
+        return sourceName;
+    }
+
+    /**
+     * Returns the line of the current token, counting from 1.
+     */
+    public int line() {
+        return tokenLine;
+    }
+
+    /**
+     * Returns the column of the current token's first character, counting from 1.
+     */
+    public int column() {
+        return tokenColumn;
+    }
+
+    /**
+     * Returns the size of the input: bytes for files and byte buffers, chars for text and Readers.
+     */
+    public long sourceSize() {
+        return sourceSize;
+    }
+
+    private void readChar() {
+        position++;
+        currentChar = (position < length) ? source[position] : '\0'; // '/0' as null for char
+    }
+
+    public boolean hasMoreTokens() {
+        skipWhitespaceAndComments();
+        return currentChar != '\0';
     }
 
     public void advance() throws IOException {
@@ -43,7 +157,10 @@ public class JackTokenizer {
             throw new IllegalStateException("Called advance when no more tokens");
         }
 
-        currentTokenBuilder = new StringBuilder(); // Reset the current token
+        hasToken = true;
+        tokenStart = position;  // Reset the current token
+        tokenLine = line;
+        tokenColumn = position - lineStart + 1;
         currentTokenType = null; // Reset the current token type
 
         if (isSymbol(currentChar)) {
@@ -59,13 +176,16 @@ public class JackTokenizer {
             handleIdentifierOrKeyword();
         }
 
-        currentToken = currentTokenBuilder.toString();
+        if (currentTokenType != TokenType.STRING_CONST) {
+            tokenLength = position - tokenStart;
+        }
     }
 
-    private void skipWhitespaceAndComments() throws IOException {
+    private void skipWhitespaceAndComments() {
         while (currentChar != '\0') {
             // Skip whitespace
             while (currentChar != '\0' && Character.isWhitespace(currentChar)) {
+                if (currentChar == '\n') newLine();
                 readChar();
             }
 
@@ -87,6 +207,7 @@ public class JackTokenizer {
                         readChar(); // skip /
                         break;
                     }
+                    if (currentChar == '\n') newLine();
                     readChar();
                 }
                 continue;
@@ -95,58 +216,53 @@ public class JackTokenizer {
         }
     }
 
-    private int peekNext() throws IOException {
-        bReader.mark(1);
-        int next = bReader.read();
-        bReader.reset();
-        return next;
+    // Called on a newline before it is consumed; only whitespace and comments span lines
+    private void newLine() {
+        line++;
+        lineStart = position + 1;
     }
 
-    private void handleSymbol() throws IOException {
-        // Build the token
-        currentTokenBuilder.append(currentChar);
+    // Lookahead is a plain array read now that the whole source is in memory
+    private int peekNext() {
+        int next = position + 1;
+        return next < length ? source[next] : -1;
+    }
+
+    private void handleSymbol() {
         readChar();
     }
 
-    private void handleStringConstant() throws IOException {
+    private void handleStringConstant() {
         readChar(); // Skip opening quote
-        // Build the token
+        tokenStart = position; // The token is the text between the quotes
         while (currentChar != '\0' && currentChar != '"') {
-            currentTokenBuilder.append(currentChar);
             readChar();
         }
+        tokenLength = position - tokenStart;
         readChar(); // Skip closing quote
     }
 
-    private void handleIntegerConstant() throws IOException {
-        // Build the token
+    private void handleIntegerConstant() {
         while (currentChar != '\0' && Character.isDigit(currentChar)) {
-            currentTokenBuilder.append(currentChar);
             readChar();
         }
     }
 
 
-    private void handleIdentifierOrKeyword() throws IOException {
-        // Build the complete token
+    private void handleIdentifierOrKeyword() {
         while (currentChar != '\0' && (Character.isLetterOrDigit(currentChar) || currentChar == '_')) {
-            currentTokenBuilder.append(currentChar);
             readChar();
         }
 
-        // After building the complete token, check if it's a keyword
-        String token = currentTokenBuilder.toString();
-        try {
-            KeywordType.valueOf(token.toUpperCase());
-            currentTokenType = TokenType.KEYWORD;
-        } catch (IllegalArgumentException e) {
-            currentTokenType = TokenType.IDENTIFIER;
-        }
+        // The name table classifies each distinct name once and caches the result
+        nameSlot = names.intern(source, tokenStart, position - tokenStart);
+        currentKeyword = names.keyword(nameSlot);
+        currentTokenType = currentKeyword != null ? TokenType.KEYWORD : TokenType.IDENTIFIER;
     }
 
 
     public TokenType tokenType() {
-        if (currentToken == null) {
+        if (!hasToken) {
             throw new IllegalStateException("No current token");
         }
         return currentTokenType;
@@ -156,46 +272,65 @@ public class JackTokenizer {
         if (tokenType() != TokenType.KEYWORD) {
             throw new IllegalStateException("Current token is not a keyword");
         }
-        return KeywordType.valueOf(currentToken.toUpperCase());
+        return currentKeyword;
     }
 
     public char symbol() {
         if (tokenType() != TokenType.SYMBOL) {
             throw new IllegalStateException("Current token is not a symbol");
         }
-        return currentToken.charAt(0);
+        return source[tokenStart];
     }
 
     public int intVal() {
         if (tokenType() != TokenType.INT_CONST) {
             throw new IllegalStateException("Current token is not an integer constant");
         }
-        return Integer.parseInt(currentToken);
+        long value = 0;
+        for (int i = tokenStart, end = tokenStart + tokenLength; i < end; i++) {
+            value = value * 10 + Character.digit(source[i], 10);
+            if (value > Integer.MAX_VALUE) {
+                throw new NumberFormatException("For input string: \"" + new String(source, tokenStart, tokenLength) + "\"");
+            }
+        }
+        return (int) value;
     }
 
     public String stringVal() {
         if (tokenType() != TokenType.STRING_CONST) {
             throw new IllegalStateException("Current token is not a string constant");
         }
-        return currentToken;
+        return new String(source, tokenStart, tokenLength);
     }
 
     public String identifier() {
         if (tokenType() != TokenType.IDENTIFIER) {
             throw new IllegalStateException("Current token is not an identifier");
         }
-        return currentToken;
+        return names.name(nameSlot);
     }
 
     private boolean isSymbol(char c) {
-        return ("{}()[].,;+-*/&|<>=~".indexOf(c) != -1);
+        return c < 128 && SYMBOLS[c];
     }
 
     private boolean isValidIdentifierStart(char c) {
         return (Character.isLetter(c) || c == '_');
     }
 
+    /**
+     * Returns a 128-entry table that is true for the given ASCII characters.
+     */
+    static boolean[] asciiTable(String chars) {
+        boolean[] table = new boolean[128];
+        for (int i = 0; i < chars.length(); i++) {
+            table[chars.charAt(i)] = true;
+        }
+        return table;
+    }
+
     public void close() throws IOException {
-        bReader.close();
+        source = null;
+        length = 0;
     }
 }
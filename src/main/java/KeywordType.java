@@ -1,3 +1,5 @@
+import java.util.Locale;
+
 public enum KeywordType {
     CLASS ,
     CONSTRUCTOR,
@@ -19,5 +21,51 @@ public enum KeywordType {
     IF,
     ELSE,
     WHILE,
-    RETURN
-} 
\ No newline at end of file
+    RETURN;
+
+    // Perfect hash over the keyword spellings: (first * 8 + last * 27 + length) mod 32
+    // maps each of the 21 keywords to its own slot, so recognizing a word costs one
+    // hash and at most one character-by-character comparison.
+    private static final int TABLE_MASK = 31;
+    private static final KeywordType[] TABLE = new KeywordType[TABLE_MASK + 1];
+    private static final char[][] SPELLINGS = new char[TABLE_MASK + 1][];
+
+    static {
+        for (KeywordType keyword : values()) {
+            char[] spelling = keyword.spelling().toCharArray();
+            int slot = hash(spelling, 0, spelling.length);
+            if (TABLE[slot] != null) {
+                throw new IllegalStateException("Keyword hash collision: " + keyword + " and " + TABLE[slot]);
+            }
+            TABLE[slot] = keyword;
+            SPELLINGS[slot] = spelling;
+        }
+    }
+
+    /**
+     * Returns the keyword spelled by buffer[offset, offset + length), or null if the
+     * text is not a keyword. Keywords are matched case-sensitively, as in Jack.
+     */
+    public static KeywordType lookup(char[] buffer, int offset, int length) {
+        if (length < 2 || length > 11) return null;
+        int slot = hash(buffer, offset, length);
+        char[] spelling = SPELLINGS[slot];
+        if (spelling == null || spelling.length != length) return null;
+        for (int i = 0; i < length; i++) {
+            if (spelling[i] != buffer[offset + i]) return null;
+        }
+        return TABLE[slot];
+    }
+
+    /**
+     * Returns the keyword as it is written in Jack source. Lowercased in the root
+     * locale, since in a Turkish one "INT" would become "ınt" with a dotless i.
+     */
+    public String spelling() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    private static int hash(char[] buffer, int offset, int length) {
+        return (buffer[offset] * 8 + buffer[offset + length - 1] * 27 + length) & TABLE_MASK;
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Interns identifier and keyword names straight out of a source buffer.
+ * A name is looked up by its (offset, length) slice, so a String is only
+ * allocated the first time a name is seen; every later occurrence reuses
+ * that instance together with its cached keyword classification.
+ * Not thread-safe: each tokenizer owns its own table.
+ */
+public class NameTable {
+    private static final int INITIAL_CAPACITY = 256;  // must be a power of two
+
+    private String[] names;
+    private KeywordType[] keywords;
+    private int[] hashes;
+    private int size;
+
+    /**
+     * Creates an empty name table.
+     */
+    public NameTable() {
+        names = new String[INITIAL_CAPACITY];
+        keywords = new KeywordType[INITIAL_CAPACITY];
+        hashes = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Returns the slot of the name spelled by buffer[offset, offset + length),
+     * adding it to the table if it is not there yet.
+     */
+    public int intern(char[] buffer, int offset, int length) {
+        int hash = hash(buffer, offset, length);
+        int mask = names.length - 1;
+        int slot = hash & mask;
+        while (names[slot] != null) {
+            if (hashes[slot] == hash && matches(names[slot], buffer, offset, length)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        String name = new String(buffer, offset, length);
+        names[slot] = name;
+        keywords[slot] = KeywordType.lookup(buffer, offset, length);
+        hashes[slot] = hash;
+        if (++size * 2 > names.length) {
+            grow();
+            return find(name, hash);
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the interned name stored in the given slot.
+     */
+    public String name(int slot) {
+        return names[slot];
+    }
+
+    /**
+     * Returns the keyword stored in the given slot, or null if the name is an identifier.
+     */
+    public KeywordType keyword(int slot) {
+        return keywords[slot];
+    }
+
+    /**
+     * Returns the number of distinct names in the table.
+     */
+    public int size() {
+        return size;
+    }
+
+    private static int hash(char[] buffer, int offset, int length) {
+        // Same function as String.hashCode, computed without building the String
+        int hash = 0;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        return hash;
+    }
+
+    private static boolean matches(String name, char[] buffer, int offset, int length) {
+        if (name.length() != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (name.charAt(i) != buffer[offset + i]) return false;
+        }
+        return true;
+    }
+
+    private int find(String name, int hash) {
+        int mask = names.length - 1;
+        int slot = hash & mask;
+        while (!name.equals(names[slot])) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        String[] oldNames = names;
+        KeywordType[] oldKeywords = keywords;
+        int[] oldHashes = hashes;
+
+        names = new String[oldNames.length * 2];
+        keywords = new KeywordType[names.length];
+        hashes = new int[names.length];
+        int mask = names.length - 1;
+        for (int i = 0; i < oldNames.length; i++) {
+            if (oldNames[i] == null) continue;
+            int slot = oldHashes[i] & mask;
+            while (names[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            names[slot] = oldNames[i];
+            keywords[slot] = oldKeywords[i];
+            hashes[slot] = oldHashes[i];
+        }
+    }
+}
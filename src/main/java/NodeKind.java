@@ -0,0 +1,45 @@
+/**
+ * The kinds of node in a SyntaxTree, with what each node stores.
+ * "value" is the node's int payload, "name" and "type" its two string fields;
+ * children are listed in order.
+ */
+public enum NodeKind {
+    /** name: class name. Children: CLASS_VAR*, SUBROUTINE*. */
+    CLASS,
+    /** value: SymbolKind ordinal (STATIC or FIELD), name, type. */
+    CLASS_VAR,
+    /** value: KeywordType ordinal (CONSTRUCTOR, FUNCTION or METHOD), name, type: return type. Children: PARAMETER*, LOCAL*, STATEMENTS. */
+    SUBROUTINE,
+    /** name, type. */
+    PARAMETER,
+    /** name, type. */
+    LOCAL,
+    /** Children: statements. */
+    STATEMENTS,
+    /** name: variable; value: 1 if an array entry is assigned. Children: [index], value. */
+    LET,
+    /** Children: condition, STATEMENTS, [STATEMENTS of the else branch]. */
+    IF,
+    /** Children: condition, STATEMENTS. */
+    WHILE,
+    /** Children: CALL. */
+    DO,
+    /** Children: [value]. */
+    RETURN,
+    /** value: operator character. Children: left, right. */
+    BINARY,
+    /** value: '-' or '~'. Children: operand. */
+    UNARY,
+    /** value: the constant. */
+    INT_CONST,
+    /** name: the string. */
+    STRING_CONST,
+    /** value: KeywordType ordinal (TRUE, FALSE, NULL or THIS). */
+    KEYWORD_CONST,
+    /** name: variable. */
+    VARIABLE,
+    /** name: array variable. Children: index. */
+    ARRAY_ENTRY,
+    /** name: subroutine; type: the class or variable before the dot, if any. Children: arguments. */
+    CALL
+}
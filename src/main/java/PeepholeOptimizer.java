@@ -0,0 +1,228 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shrinks generated VM code by sliding a set of PeepholeRules over it.
+ * Passes are repeated until no rule applies, since one rewrite often exposes another.
+ * Rules rely on how CompilationEngine uses the scratch register temp 0: it is always
+ * written before it is read within one statement, so its value never outlives a rewrite.
+ */
+public class PeepholeOptimizer {
+    private static final int MAX_PASSES = 8;
+
+    private final List<PeepholeRule> rules;
+
+    /**
+     * Creates an optimizer that applies the given rules, in order of preference.
+     */
+    public PeepholeOptimizer(List<PeepholeRule> rules) {
+        this.rules = new ArrayList<>(rules);
+    }
+
+    /**
+     * Creates an optimizer with the standard rule set.
+     */
+    public static PeepholeOptimizer withDefaultRules() {
+        return new PeepholeOptimizer(defaultRules());
+    }
+
+    /**
+     * Returns the standard rule set.
+     */
+    public static List<PeepholeRule> defaultRules() {
+        List<PeepholeRule> rules = new ArrayList<>();
+        rules.add(PeepholeOptimizer::unreachableCode);
+        rules.add(PeepholeOptimizer::gotoNextLabel);
+        rules.add(PeepholeOptimizer::invertedBranch);
+        rules.add(PeepholeOptimizer::constantBranch);
+        rules.add(PeepholeOptimizer::constantNot);
+        rules.add(PeepholeOptimizer::doubleNegation);
+        rules.add(PeepholeOptimizer::negatedZero);
+        rules.add(PeepholeOptimizer::simpleArrayStore);
+        rules.add(PeepholeOptimizer::tempRoundTrip);
+        return rules;
+    }
+
+    /**
+     * Returns an optimized copy of the given code. The input is left unchanged.
+     */
+    public VMCode optimize(VMCode code) {
+        VMCode current = code;
+        for (int pass = 0; pass < MAX_PASSES; pass++) {
+            VMCode next = new VMCode();
+            boolean changed = false;
+            int i = 0;
+            while (i < current.size()) {
+                int consumed = 0;
+                for (PeepholeRule rule : rules) {
+                    consumed = rule.apply(current, i, next);
+                    if (consumed > 0) break;
+                }
+                if (consumed > 0) {
+                    changed = true;
+                    i += consumed;
+                } else {
+                    next.add(current, i);
+                    i++;
+                }
+            }
+            current = next;
+            if (!changed) break;
+        }
+        return current;
+    }
+
+    // Rules
+
+    /**
+     * Drops instructions that follow a goto or return and cannot be reached,
+     * up to the next label or function.
+     */
+    static int unreachableCode(VMCode in, int i, VMCode out) {
+        VMCommand command = in.command(i);
+        if (command != VMCommand.GOTO && command != VMCommand.RETURN) return 0;
+        int end = i + 1;
+        while (end < in.size() && in.command(end) != VMCommand.LABEL && in.command(end) != VMCommand.FUNCTION) {
+            end++;
+        }
+        if (end == i + 1) return 0;
+        out.add(in, i);
+        return end - i;
+    }
+
+    /**
+     * goto L; label L  =>  label L
+     * Also applies when L is anywhere in a run of labels right after the goto,
+     * as in the "goto L1; label L2; label L1" tail of an if without else.
+     */
+    static int gotoNextLabel(VMCode in, int i, VMCode out) {
+        if (!is(in, i, VMCommand.GOTO)) return 0;
+        String target = in.name(i);
+        for (int j = i + 1; is(in, j, VMCommand.LABEL); j++) {
+            if (in.name(j).equals(target)) return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * not; if-goto L1; goto L2; label L1  =>  if-goto L2; label L1
+     * Only after a comparison: "not" inverts a branch only for the canonical true (-1)
+     * and false (0), and a non-canonical condition such as 5 is true both before and
+     * after "not".
+     */
+    static int invertedBranch(VMCode in, int i, VMCode out) {
+        if (!isComparison(out, out.size() - 1)) return 0;
+        if (is(in, i, VMCommand.NOT) && is(in, i + 1, VMCommand.IF_GOTO) && is(in, i + 2, VMCommand.GOTO)
+                && is(in, i + 3, VMCommand.LABEL) && in.name(i + 1).equals(in.name(i + 3))) {
+            out.add(VMCommand.IF_GOTO, out.nameId(in.name(i + 2)), 0);
+            out.add(in, i + 3);
+            return 4;
+        }
+        return 0;
+    }
+
+    /**
+     * push constant 0; if-goto L  =>  (nothing)
+     * push constant c; if-goto L  =>  goto L, for c != 0
+     * push constant c; neg; if-goto L  =>  goto L, for c != 0
+     */
+    static int constantBranch(VMCode in, int i, VMCode out) {
+        if (!isPush(in, i, Segment.CONSTANT)) return 0;
+        int value = in.arg2(i);
+        int branch = i + 1;
+        if (is(in, branch, VMCommand.NEG)) branch++;
+        if (!is(in, branch, VMCommand.IF_GOTO)) return 0;
+        if (value != 0) {
+            out.add(VMCommand.GOTO, out.nameId(in.name(branch)), 0);
+        }
+        return branch - i + 1;
+    }
+
+    /**
+     * push constant 1; neg; not  =>  push constant 0
+     */
+    static int constantNot(VMCode in, int i, VMCode out) {
+        if (isPush(in, i, Segment.CONSTANT) && in.arg2(i) == 1 && is(in, i + 1, VMCommand.NEG) && is(in, i + 2, VMCommand.NOT)) {
+            out.add(VMCommand.PUSH, Segment.CONSTANT.ordinal(), 0);
+            return 3;
+        }
+        return 0;
+    }
+
+    /**
+     * not; not  =>  (nothing)
+     * neg; neg  =>  (nothing)
+     */
+    static int doubleNegation(VMCode in, int i, VMCode out) {
+        VMCommand command = in.command(i);
+        if ((command == VMCommand.NOT || command == VMCommand.NEG) && is(in, i + 1, command)) {
+            return 2;
+        }
+        return 0;
+    }
+
+    /**
+     * push constant 0; neg  =>  push constant 0
+     */
+    static int negatedZero(VMCode in, int i, VMCode out) {
+        if (isPush(in, i, Segment.CONSTANT) && in.arg2(i) == 0 && is(in, i + 1, VMCommand.NEG)) {
+            out.add(in, i);
+            return 2;
+        }
+        return 0;
+    }
+
+    /**
+     * Array store of a value that is a single push not involving THAT:
+     * push s k; pop temp 0; pop pointer 1; push temp 0; pop that 0
+     *   =>  pop pointer 1; push s k; pop that 0
+     */
+    static int simpleArrayStore(VMCode in, int i, VMCode out) {
+        if (!is(in, i, VMCommand.PUSH)) return 0;
+        Segment segment = in.segment(i);
+        if (segment == Segment.THAT || (segment == Segment.POINTER && in.arg2(i) == 1)) return 0;
+        if (isPop(in, i + 1, Segment.TEMP, 0) && isPop(in, i + 2, Segment.POINTER, 1)
+                && isPush(in, i + 3, Segment.TEMP, 0) && isPop(in, i + 4, Segment.THAT, 0)) {
+            out.add(in, i + 2);
+            out.add(in, i);
+            out.add(in, i + 4);
+            return 5;
+        }
+        return 0;
+    }
+
+    /**
+     * pop temp 0; push temp 0  =>  (nothing)
+     */
+    static int tempRoundTrip(VMCode in, int i, VMCode out) {
+        if (isPop(in, i, Segment.TEMP, 0) && isPush(in, i + 1, Segment.TEMP, 0)) {
+            return 2;
+        }
+        return 0;
+    }
+
+    // Helpers
+
+    private static boolean is(VMCode code, int i, VMCommand command) {
+        return i < code.size() && code.command(i) == command;
+    }
+
+    // Whether instruction i pushes a canonical boolean, as eq, lt and gt do
+    private static boolean isComparison(VMCode code, int i) {
+        if (i < 0) return false;
+        VMCommand command = code.command(i);
+        return command == VMCommand.EQ || command == VMCommand.LT || command == VMCommand.GT;
+    }
+
+    private static boolean isPush(VMCode code, int i, Segment segment) {
+        return is(code, i, VMCommand.PUSH) && code.segment(i) == segment;
+    }
+
+    private static boolean isPush(VMCode code, int i, Segment segment, int index) {
+        return isPush(code, i, segment) && code.arg2(i) == index;
+    }
+
+    private static boolean isPop(VMCode code, int i, Segment segment, int index) {
+        return is(code, i, VMCommand.POP) && code.segment(i) == segment && code.arg2(i) == index;
+    }
+}
@@ -0,0 +1,11 @@
+/**
+ * A rewrite over a short window of VM instructions, used by PeepholeOptimizer.
+ */
+public interface PeepholeRule {
+    /**
+     * Tries to rewrite the instructions of in starting at position i.
+     * If the rule applies, appends the replacement to out and returns the number of
+     * instructions of in that it consumed; otherwise returns 0 and appends nothing.
+     */
+    int apply(VMCode in, int i, VMCode out);
+}
@@ -0,0 +1,40 @@
+public enum Segment {
+    CONSTANT("constant"),
+    ARGUMENT("argument"),
+    LOCAL("local"),
+    STATIC("static"),
+    THIS("this"),
+    THAT("that"),
+    POINTER("pointer"),
+    TEMP("temp");
+
+    private final String text;
+
+    Segment(String text) {
+        this.text = text;
+    }
+
+    /**
+     * Returns the segment name as it appears in VM code.
+     */
+    public String text() {
+        return text;
+    }
+
+    /**
+     * Returns the segment with the given VM name.
+     */
+    public static Segment of(String text) {
+        switch (text) {
+            case "constant": return CONSTANT;
+            case "argument": return ARGUMENT;
+            case "local": return LOCAL;
+            case "static": return STATIC;
+            case "this": return THIS;
+            case "that": return THAT;
+            case "pointer": return POINTER;
+            case "temp": return TEMP;
+            default: throw new IllegalArgumentException("Invalid segment: " + text);
+        }
+    }
+}
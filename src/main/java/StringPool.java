@@ -0,0 +1,80 @@
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Whole-program pool of string constants, shared by the engines of one compile.
+ * Every distinct literal gets an accessor function in a generated class that builds
+ * the string on its first call, keeps it in a static, and returns the same object
+ * on every later call. Accessor names are derived from the literal's content, so
+ * the output does not depend on the order in which parallel workers register them.
+ * Pooled strings are shared: programs must not dispose or modify them.
+ */
+public class StringPool {
+    public static final String CLASS_NAME = "JackStringPool";
+
+    private final Map<String, String> functionsByLiteral = new ConcurrentHashMap<>();
+    private final Map<String, String> literalsByFunction = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the name of the accessor function for the given literal, registering it if needed.
+     */
+    public String functionFor(String literal) {
+        String function = functionsByLiteral.get(literal);
+        if (function != null) return function;
+
+        function = CLASS_NAME + ".s" + Long.toHexString(hash(literal));
+        String existing = literalsByFunction.putIfAbsent(function, literal);
+        if (existing != null && !existing.equals(literal)) {
+            throw new IllegalStateException("String pool hash collision between \"" + existing + "\" and \"" + literal + "\"");
+        }
+        functionsByLiteral.putIfAbsent(literal, function);
+        return function;
+    }
+
+    /**
+     * Returns the number of distinct literals in the pool.
+     */
+    public int size() {
+        return literalsByFunction.size();
+    }
+
+    /**
+     * Writes the pool class, with one accessor function per literal, to the given .vm file.
+     */
+    public void writeClass(String outputFile) throws IOException {
+        VMWriter writer = new VMWriter(outputFile);
+        writeClass(writer);
+        writer.close();
+    }
+
+    /**
+     * Writes the pool class into the given writer, without closing it.
+     */
+    public void writeClass(VMWriter writer) {
+        int slot = 0;
+        for (Map.Entry<String, String> entry : new TreeMap<>(literalsByFunction).entrySet()) {
+            String ready = CLASS_NAME + "_" + slot;
+            writer.writeFunction(entry.getKey(), 0);
+            writer.writePush(Segment.STATIC, slot);
+            writer.writeIf(ready);
+            writer.writeString(entry.getValue());
+            writer.writePop(Segment.STATIC, slot);
+            writer.writeLabel(ready);
+            writer.writePush(Segment.STATIC, slot);
+            writer.writeReturn();
+            slot++;
+        }
+    }
+
+    // 64-bit FNV-1a over the characters of the literal
+    private static long hash(String literal) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < literal.length(); i++) {
+            hash ^= literal.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,23 @@
+public enum SymbolKind {
+    STATIC(Segment.STATIC),
+    FIELD(Segment.THIS),
+    ARG(Segment.ARGUMENT),
+    VAR(Segment.LOCAL),
+    NONE(null);
+
+    private final Segment segment;
+
+    SymbolKind(Segment segment) {
+        this.segment = segment;
+    }
+
+    /**
+     * Returns the VM segment that variables of this kind live in.
+     */
+    public Segment segment() {
+        if (segment == null) {
+            throw new IllegalArgumentException("Invalid kind: " + this);
+        }
+        return segment;
+    }
+}
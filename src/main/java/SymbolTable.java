@@ -1,23 +1,93 @@
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * Class and subroutine scopes of the variables in one class.
+ * A lookup returns a packed int handle holding the variable's kind, index and type
+ * id, so resolving a name costs one hash probe per scope and no allocation. Both
+ * scopes are open-addressing tables; the subroutine scope is emptied by bumping a
+ * generation stamp, so reset() never reallocates.
+ */
 public class SymbolTable {
-    private Map<String, Symbol> classScope;
-    private Map<String, Symbol> subroutineScope;
-    private int staticIndex;
-    private int fieldIndex;
-    private int argIndex;
-    private int varIndex;
-    
-    private static class Symbol {
-        String type;
-        String kind;
-        int scope;
-        
-        Symbol(String type, String kind, int scope) {
-            this.type = type;
-            this.kind = kind;
-            this.scope = scope;
+    /** Handle returned by lookup for names that are not defined. */
+    public static final int NOT_FOUND = -1;
+
+    // Handle layout: kind in bits 0-2, index in bits 3-18, type id in bits 19-30
+    private static final int KIND_BITS = 3;
+    private static final int INDEX_BITS = 16;
+    private static final int MAX_INDEX = (1 << INDEX_BITS) - 1;
+    private static final int MAX_TYPE_ID = (1 << (31 - KIND_BITS - INDEX_BITS)) - 1;
+    private static final SymbolKind[] KINDS = SymbolKind.values();
+
+    private final Scope classScope;
+    private final Scope subroutineScope;
+    private final int[] counts;
+    private String[] types;
+    private int typeCount;
+    private final Map<String, Integer> typeIds;
+
+    /**
+     * An open-addressing table from names to handles.
+     * Slots whose stamp is not the current generation are empty.
+     */
+    private static class Scope {
+        private String[] names = new String[32];
+        private int[] handles = new int[32];
+        private int[] stamps = new int[32];
+        private int generation = 1;
+        private int size;
+
+        int get(String name) {
+            int mask = names.length - 1;
+            for (int slot = name.hashCode() & mask; stamps[slot] == generation; slot = (slot + 1) & mask) {
+                String candidate = names[slot];
+                if (candidate == name || candidate.equals(name)) {
+                    return handles[slot];
+                }
+            }
+            return NOT_FOUND;
+        }
+
+        void put(String name, int handle) {
+            if ((size + 1) * 2 > names.length) {
+                grow();
+            }
+            int mask = names.length - 1;
+            int slot = name.hashCode() & mask;
+            while (stamps[slot] == generation) {
+                if (names[slot].equals(name)) {
+                    handles[slot] = handle;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            names[slot] = name;
+            handles[slot] = handle;
+            stamps[slot] = generation;
+            size++;
+        }
+
+        void clear() {
+            generation++;
+            size = 0;
+        }
+
+        private void grow() {
+            String[] oldNames = names;
+            int[] oldHandles = handles;
+            int[] oldStamps = stamps;
+            int oldGeneration = generation;
+            names = new String[oldNames.length * 2];
+            handles = new int[names.length];
+            stamps = new int[names.length];
+            generation = 1;
+            size = 0;
+            for (int i = 0; i < oldNames.length; i++) {
+                if (oldStamps[i] == oldGeneration) {
+                    put(oldNames[i], oldHandles[i]);
+                }
+            }
         }
     }
 
@@ -25,94 +95,102 @@ public class SymbolTable {
      * Creates a new empty symbol table.
      */
     public SymbolTable() {
-        classScope = new HashMap<>();
-        subroutineScope = new HashMap<>();
-        reset();
+        classScope = new Scope();
+        subroutineScope = new Scope();
+        counts = new int[KINDS.length];
+        types = new String[16];
+        typeIds = new HashMap<>();
     }
 
     /**
-     * Empties the symbol table, and resets the four indexes to 0.
+     * Empties the subroutine scope, and resets the argument and local indexes to 0.
+     * Class-level statics and fields are kept.
      * Should be called when starting to compile a subroutine declaration.
      */
     public void reset() {
         subroutineScope.clear();
-        staticIndex = 0;
-        fieldIndex = 0;
-        argIndex = 0;
-        varIndex = 0;
+        counts[SymbolKind.ARG.ordinal()] = 0;
+        counts[SymbolKind.VAR.ordinal()] = 0;
     }
 
     /**
      * Defines a new identifier of the given name, type, and kind, and assigns it's index.
      */
-    public void define(String name, String type, String kind) {
-        Map<String, Symbol> scope = (kind.equals("STATIC") || kind.equals("FIELD")) ? classScope : subroutineScope;
-        int index;
-        
-        switch (kind) {
-            case "STATIC": index = staticIndex++; break;
-            case "FIELD": index = fieldIndex++; break;
-            case "ARG": index = argIndex++; break;
-            case "VAR": index = varIndex++; break;
-            default: throw new IllegalArgumentException("Invalid kind: " + kind);
+    public void define(String name, String type, SymbolKind kind) {
+        if (kind == SymbolKind.NONE) {
+            throw new IllegalArgumentException("Invalid kind: " + kind);
+        }
+        int index = counts[kind.ordinal()]++;
+        int handle = pack(kind, index, typeId(type));
+        if (kind == SymbolKind.STATIC || kind == SymbolKind.FIELD) {
+            classScope.put(name, handle);
+        } else {
+            subroutineScope.put(name, handle);
         }
-        
-        scope.put(name, new Symbol(type, kind, index));
+    }
+
+    /**
+     * Reserves a static slot that has no name in the source and returns its index.
+     */
+    public int reserveStatic() {
+        return counts[SymbolKind.STATIC.ordinal()]++;
     }
 
     /**
      * Returns the number of variables of the given kind already defined in the current scope.
      */
-    public int varCount(String kind) {
-        switch (kind) {
-            case "STATIC": return staticIndex;
-            case "FIELD": return fieldIndex;
-            case "ARG": return argIndex;
-            case "VAR": return varIndex;
-            default: throw new IllegalArgumentException("Invalid kind: " + kind);
-        }
+    public int varCount(SymbolKind kind) {
+        return counts[kind.ordinal()];
+    }
+
+    /**
+     * Returns the handle of the named identifier, giving priority to the subroutine
+     * scope, or NOT_FOUND if it is not defined.
+     */
+    public int lookup(String name) {
+        int handle = subroutineScope.get(name);
+        return handle != NOT_FOUND ? handle : classScope.get(name);
     }
 
     /**
-     * Returns the kind of the named identifier.
-     * If the identifier is not found, returns "NONE".
+     * Returns the kind stored in a handle; NONE for NOT_FOUND.
      */
-    public String kindOf(String name) {
-        // give priority to subroutine scope
-        Symbol symbol = subroutineScope.get(name);
-        if (symbol != null) return symbol.kind;
-        
-        symbol = classScope.get(name);
-        if (symbol != null) return symbol.kind;
-        
-        return "NONE";
+    public static SymbolKind kindOf(int handle) {
+        return handle == NOT_FOUND ? SymbolKind.NONE : KINDS[handle & ((1 << KIND_BITS) - 1)];
     }
 
     /**
-     * Returns the type of the named variable.
+     * Returns the index stored in a handle.
      */
-    public String typeOf(String name) {
-        // give priority to subroutine scope
-        Symbol symbol = subroutineScope.get(name);
-        if (symbol != null) return symbol.type;
-        
-        symbol = classScope.get(name);
-        if (symbol != null) return symbol.type;
-        
-        throw new IllegalArgumentException("Variable not found: " + name);
+    public static int indexOf(int handle) {
+        return (handle >>> KIND_BITS) & MAX_INDEX;
     }
 
     /**
-     * Returns the index of the named variable.
+     * Returns the type stored in a handle.
      */
-    public int indexOf(String name) {
-        // give priority to subroutine scope
-        Symbol symbol = subroutineScope.get(name);
-        if (symbol != null) return symbol.scope;
-        
-        symbol = classScope.get(name);
-        if (symbol != null) return symbol.scope;
-        
-        throw new IllegalArgumentException("Variable not found: " + name);
+    public String typeOf(int handle) {
+        return types[handle >>> (KIND_BITS + INDEX_BITS)];
+    }
+
+    private static int pack(SymbolKind kind, int index, int typeId) {
+        if (index > MAX_INDEX) {
+            throw new IllegalStateException("Too many variables of kind " + kind);
+        }
+        return (typeId << (KIND_BITS + INDEX_BITS)) | (index << KIND_BITS) | kind.ordinal();
+    }
+
+    private int typeId(String type) {
+        Integer id = typeIds.get(type);
+        if (id != null) return id;
+        if (typeCount > MAX_TYPE_ID) {
+            throw new IllegalStateException("Too many distinct types");
+        }
+        if (typeCount == types.length) {
+            types = Arrays.copyOf(types, types.length * 2);
+        }
+        types[typeCount] = type;
+        typeIds.put(type, typeCount);
+        return typeCount++;
     }
 }
@@ -0,0 +1,186 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The syntax tree of one Jack class, stored as a struct of arrays: a node is an
+ * int id, and each of its fields lives in its own array at that index. Children
+ * are linked through firstChild/nextSibling, and names, types and string constants
+ * are interned in a string table, so a tree of any size is a dozen arrays rather
+ * than one object per node. A tree can be cleared and refilled, reusing its arrays.
+ * See NodeKind for what each kind of node stores.
+ */
+public class SyntaxTree {
+    public static final int NONE = -1;
+    public static final int ROOT = 0;
+
+    private static final NodeKind[] KINDS = NodeKind.values();
+
+    private int[] kinds;
+    private int[] values;
+    private int[] names;       // string id or NONE
+    private int[] types;       // string id or NONE
+    private int[] firstChildren;
+    private int[] lastChildren;
+    private int[] nextSiblings;
+    private int[] lines;
+    private int[] columns;
+    private int size;
+
+    private String[] strings;
+    private int stringCount;
+    private final Map<String, Integer> stringIds;
+
+    private String sourceName;
+
+    /**
+     * Creates an empty tree.
+     */
+    public SyntaxTree() {
+        int capacity = 1024;
+        kinds = new int[capacity];
+        values = new int[capacity];
+        names = new int[capacity];
+        types = new int[capacity];
+        firstChildren = new int[capacity];
+        lastChildren = new int[capacity];
+        nextSiblings = new int[capacity];
+        lines = new int[capacity];
+        columns = new int[capacity];
+        strings = new String[64];
+        stringIds = new HashMap<>();
+    }
+
+    /**
+     * Removes every node and string, keeping the arrays for the next class.
+     */
+    public void clear(String sourceName) {
+        this.sourceName = sourceName;
+        size = 0;
+        Arrays.fill(strings, 0, stringCount, null);
+        stringCount = 0;
+        stringIds.clear();
+    }
+
+    /**
+     * Returns the name of the source the tree was parsed from.
+     */
+    public String sourceName() {
+        return sourceName;
+    }
+
+    /**
+     * Adds a node without children and returns its id. The first node added is the root.
+     */
+    public int add(NodeKind kind, int value, String name, String type, int line, int column) {
+        if (size == kinds.length) {
+            grow();
+        }
+        int node = size++;
+        kinds[node] = kind.ordinal();
+        values[node] = value;
+        names[node] = name != null ? stringId(name) : NONE;
+        types[node] = type != null ? stringId(type) : NONE;
+        firstChildren[node] = NONE;
+        lastChildren[node] = NONE;
+        nextSiblings[node] = NONE;
+        lines[node] = line;
+        columns[node] = column;
+        return node;
+    }
+
+    /**
+     * Appends child to the children of parent.
+     */
+    public void addChild(int parent, int child) {
+        if (firstChildren[parent] == NONE) {
+            firstChildren[parent] = child;
+        } else {
+            nextSiblings[lastChildren[parent]] = child;
+        }
+        lastChildren[parent] = child;
+    }
+
+    /**
+     * Returns the number of nodes.
+     */
+    public int size() {
+        return size;
+    }
+
+    public NodeKind kind(int node) {
+        return KINDS[kinds[node]];
+    }
+
+    public int value(int node) {
+        return values[node];
+    }
+
+    public String name(int node) {
+        int id = names[node];
+        return id == NONE ? null : strings[id];
+    }
+
+    public String type(int node) {
+        int id = types[node];
+        return id == NONE ? null : strings[id];
+    }
+
+    public int firstChild(int node) {
+        return firstChildren[node];
+    }
+
+    public int nextSibling(int node) {
+        return nextSiblings[node];
+    }
+
+    /**
+     * Returns the number of children of the given node.
+     */
+    public int childCount(int node) {
+        int count = 0;
+        for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+            count++;
+        }
+        return count;
+    }
+
+    public int line(int node) {
+        return lines[node];
+    }
+
+    public int column(int node) {
+        return columns[node];
+    }
+
+    /**
+     * Returns how many nodes the tree can hold before its arrays grow again.
+     */
+    public int capacity() {
+        return kinds.length;
+    }
+
+    private int stringId(String text) {
+        Integer id = stringIds.get(text);
+        if (id != null) return id;
+        if (stringCount == strings.length) {
+            strings = Arrays.copyOf(strings, strings.length * 2);
+        }
+        strings[stringCount] = text;
+        stringIds.put(text, stringCount);
+        return stringCount++;
+    }
+
+    private void grow() {
+        int capacity = kinds.length * 2;
+        kinds = Arrays.copyOf(kinds, capacity);
+        values = Arrays.copyOf(values, capacity);
+        names = Arrays.copyOf(names, capacity);
+        types = Arrays.copyOf(types, capacity);
+        firstChildren = Arrays.copyOf(firstChildren, capacity);
+        lastChildren = Arrays.copyOf(lastChildren, capacity);
+        nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        columns = Arrays.copyOf(columns, capacity);
+    }
+}
@@ -0,0 +1,315 @@
+import java.io.IOException;
+
+/**
+ * Parses one Jack class from a TokenStream into a SyntaxTree, following the same
+ * grammar rules as CompilationEngine's direct mode, except that a missing term is
+ * reported instead of compiling to nothing. The parser only builds the tree; names
+ * are resolved, and code generated, by CodeGenerator.
+ */
+public class SyntaxTreeParser {
+    private static final boolean[] OPERATORS = JackTokenizer.asciiTable("+-*/&|<>=");
+
+    private final TokenStream tokenizer;
+    private final SyntaxTree tree;
+
+    /**
+     * Creates a parser that reads from the given stream, positioned on the first
+     * token, and fills the given tree.
+     */
+    public SyntaxTreeParser(TokenStream tokenizer, SyntaxTree tree) {
+        this.tokenizer = tokenizer;
+        this.tree = tree;
+    }
+
+    /**
+     * Parses a complete class, replacing the tree's contents. Its root is the CLASS node.
+     */
+    public void parseClass() throws IOException {
+        tree.clear(tokenizer.sourceName());
+        int line = tokenizer.line();
+        int column = tokenizer.column();
+        tokenizer.expectKeyword(KeywordType.CLASS);
+        int root = tree.add(NodeKind.CLASS, 0, tokenizer.identifier(), null, line, column);
+        tokenizer.expectIdentifier();
+        tokenizer.expectSymbol('{');
+
+        while (isKeyword(KeywordType.STATIC, KeywordType.FIELD)) {
+            parseClassVarDec(root);
+        }
+        while (isKeyword(KeywordType.CONSTRUCTOR, KeywordType.FUNCTION, KeywordType.METHOD)) {
+            tree.addChild(root, parseSubroutine());
+        }
+        tokenizer.expectSymbol('}');
+    }
+
+    private void parseClassVarDec(int parent) throws IOException {
+        SymbolKind kind = tokenizer.keyword() == KeywordType.STATIC ? SymbolKind.STATIC : SymbolKind.FIELD;
+        tokenizer.expectKeyword(KeywordType.STATIC, KeywordType.FIELD);
+        parseVarNames(parent, NodeKind.CLASS_VAR, kind.ordinal(), parseType());
+    }
+
+    private int parseSubroutine() throws IOException {
+        int line = tokenizer.line();
+        int column = tokenizer.column();
+        KeywordType subroutineType = tokenizer.keyword();
+        tokenizer.expectKeyword(KeywordType.CONSTRUCTOR, KeywordType.FUNCTION, KeywordType.METHOD);
+        String returnType = parseType();
+        int subroutine = tree.add(NodeKind.SUBROUTINE, subroutineType.ordinal(), tokenizer.identifier(), returnType,
+            line, column);
+        tokenizer.expectIdentifier();
+
+        // Parameter list
+        tokenizer.expectSymbol('(');
+        if (!isSymbol(')')) {
+            tree.addChild(subroutine, parseVarName(NodeKind.PARAMETER, 0, parseType()));
+            while (isSymbol(',')) {
+                tokenizer.expectSymbol(',');
+                tree.addChild(subroutine, parseVarName(NodeKind.PARAMETER, 0, parseType()));
+            }
+        }
+        tokenizer.expectSymbol(')');
+
+        // Body
+        tokenizer.expectSymbol('{');
+        while (isKeyword(KeywordType.VAR)) {
+            tokenizer.expectKeyword(KeywordType.VAR);
+            parseVarNames(subroutine, NodeKind.LOCAL, 0, parseType());
+        }
+        tree.addChild(subroutine, parseStatements());
+        tokenizer.expectSymbol('}');
+        return subroutine;
+    }
+
+    // Parses "name (, name)* ;" into one node per name
+    private void parseVarNames(int parent, NodeKind kind, int value, String type) throws IOException {
+        tree.addChild(parent, parseVarName(kind, value, type));
+        while (isSymbol(',')) {
+            tokenizer.expectSymbol(',');
+            tree.addChild(parent, parseVarName(kind, value, type));
+        }
+        tokenizer.expectSymbol(';');
+    }
+
+    private int parseVarName(NodeKind kind, int value, String type) throws IOException {
+        int node = tree.add(kind, value, tokenizer.identifier(), type, tokenizer.line(), tokenizer.column());
+        tokenizer.expectIdentifier();
+        return node;
+    }
+
+    private String parseType() throws IOException {
+        String type;
+        if (tokenizer.tokenType() == TokenType.KEYWORD) {
+            type = tokenizer.keyword().toString();
+            tokenizer.expectKeyword(KeywordType.INT, KeywordType.CHAR, KeywordType.BOOLEAN, KeywordType.VOID);
+        } else {
+            type = tokenizer.identifier();
+            tokenizer.expectIdentifier();
+        }
+        return type;
+    }
+
+    private int parseStatements() throws IOException {
+        int statements = tree.add(NodeKind.STATEMENTS, 0, null, null, tokenizer.line(), tokenizer.column());
+        while (tokenizer.tokenType() == TokenType.KEYWORD) {
+            int statement;
+            switch (tokenizer.keyword()) {
+                case LET: statement = parseLet(); break;
+                case IF: statement = parseIf(); break;
+                case WHILE: statement = parseWhile(); break;
+                case DO: statement = parseDo(); break;
+                case RETURN: statement = parseReturn(); break;
+                default: return statements;
+            }
+            tree.addChild(statements, statement);
+        }
+        return statements;
+    }
+
+    private int parseLet() throws IOException {
+        tokenizer.expectKeyword(KeywordType.LET);
+        boolean isArray = tokenizer.peekSymbol(1) == '[';
+        // Located at the variable, where an undefined name is reported
+        int let = tree.add(NodeKind.LET, isArray ? 1 : 0, tokenizer.identifier(), null, tokenizer.line(), tokenizer.column());
+        tokenizer.expectIdentifier();
+        if (isArray) {
+            tokenizer.expectSymbol('[');
+            tree.addChild(let, parseExpression());
+            tokenizer.expectSymbol(']');
+        }
+        tokenizer.expectSymbol('=');
+        tree.addChild(let, parseExpression());
+        tokenizer.expectSymbol(';');
+        return let;
+    }
+
+    private int parseIf() throws IOException {
+        int node = tree.add(NodeKind.IF, 0, null, null, tokenizer.line(), tokenizer.column());
+        tokenizer.expectKeyword(KeywordType.IF);
+        tokenizer.expectSymbol('(');
+        tree.addChild(node, parseExpression());
+        tokenizer.expectSymbol(')');
+        tree.addChild(node, parseBlock());
+        if (isKeyword(KeywordType.ELSE)) {
+            tokenizer.expectKeyword(KeywordType.ELSE);
+            tree.addChild(node, parseBlock());
+        }
+        return node;
+    }
+
+    private int parseWhile() throws IOException {
+        int node = tree.add(NodeKind.WHILE, 0, null, null, tokenizer.line(), tokenizer.column());
+        tokenizer.expectKeyword(KeywordType.WHILE);
+        tokenizer.expectSymbol('(');
+        tree.addChild(node, parseExpression());
+        tokenizer.expectSymbol(')');
+        tree.addChild(node, parseBlock());
+        return node;
+    }
+
+    // Parses "{ statements }"
+    private int parseBlock() throws IOException {
+        tokenizer.expectSymbol('{');
+        int statements = parseStatements();
+        tokenizer.expectSymbol('}');
+        return statements;
+    }
+
+    private int parseDo() throws IOException {
+        int node = tree.add(NodeKind.DO, 0, null, null, tokenizer.line(), tokenizer.column());
+        tokenizer.expectKeyword(KeywordType.DO);
+        tree.addChild(node, parseSubroutineCall());
+        tokenizer.expectSymbol(';');
+        return node;
+    }
+
+    private int parseReturn() throws IOException {
+        int node = tree.add(NodeKind.RETURN, 0, null, null, tokenizer.line(), tokenizer.column());
+        tokenizer.expectKeyword(KeywordType.RETURN);
+        if (!isSymbol(';')) {
+            tree.addChild(node, parseExpression());
+        }
+        tokenizer.expectSymbol(';');
+        return node;
+    }
+
+    // Operators have no precedence in Jack: "a + b * c" is "(a + b) * c"
+    private int parseExpression() throws IOException {
+        int left = parseTerm();
+        while (tokenizer.tokenType() == TokenType.SYMBOL && isOperator(tokenizer.symbol())) {
+            char operator = tokenizer.symbol();
+            int binary = tree.add(NodeKind.BINARY, operator, null, null, tokenizer.line(), tokenizer.column());
+            tokenizer.expectSymbol(operator);
+            tree.addChild(binary, left);
+            tree.addChild(binary, parseTerm());
+            left = binary;
+        }
+        return left;
+    }
+
+    private int parseTerm() throws IOException {
+        int line = tokenizer.line();
+        int column = tokenizer.column();
+        TokenType type = tokenizer.tokenType();
+        if (type == null) {
+            throw tokenizer.syntaxError("term");
+        }
+        switch (type) {
+            case INT_CONST: {
+                int node = tree.add(NodeKind.INT_CONST, tokenizer.intVal(), null, null, line, column);
+                tokenizer.expectIntegerConstant();
+                return node;
+            }
+            case STRING_CONST: {
+                int node = tree.add(NodeKind.STRING_CONST, 0, tokenizer.stringVal(), null, line, column);
+                tokenizer.expectStringConstant();
+                return node;
+            }
+            case KEYWORD: {
+                KeywordType keyword = tokenizer.keyword();
+                if (keyword != KeywordType.TRUE && keyword != KeywordType.FALSE
+                        && keyword != KeywordType.NULL && keyword != KeywordType.THIS) {
+                    throw tokenizer.syntaxError("term");
+                }
+                int node = tree.add(NodeKind.KEYWORD_CONST, keyword.ordinal(), null, null, line, column);
+                tokenizer.expectKeyword(keyword);
+                return node;
+            }
+            case IDENTIFIER: {
+                char next = tokenizer.peekSymbol(1);
+                if (next == '(' || next == '.') {
+                    return parseSubroutineCall();
+                }
+                NodeKind kind = next == '[' ? NodeKind.ARRAY_ENTRY : NodeKind.VARIABLE;
+                int node = tree.add(kind, 0, tokenizer.identifier(), null, line, column);
+                tokenizer.expectIdentifier();
+                if (kind == NodeKind.ARRAY_ENTRY) {
+                    tokenizer.expectSymbol('[');
+                    tree.addChild(node, parseExpression());
+                    tokenizer.expectSymbol(']');
+                }
+                return node;
+            }
+            case SYMBOL: {
+                char symbol = tokenizer.symbol();
+                if (symbol == '(') {
+                    tokenizer.expectSymbol('(');
+                    int node = parseExpression();
+                    tokenizer.expectSymbol(')');
+                    return node;
+                }
+                if (symbol == '-' || symbol == '~') {
+                    int node = tree.add(NodeKind.UNARY, symbol, null, null, line, column);
+                    tokenizer.expectSymbol(symbol);
+                    tree.addChild(node, parseTerm());
+                    return node;
+                }
+                break;
+            }
+        }
+        throw tokenizer.syntaxError("term");
+    }
+
+    // Parses "name(arguments)" or "receiver.name(arguments)"
+    private int parseSubroutineCall() throws IOException {
+        int line = tokenizer.line();
+        int column = tokenizer.column();
+        String receiver = null;
+        String name = tokenizer.identifier();
+        tokenizer.expectIdentifier();
+        if (isSymbol('.')) {
+            tokenizer.expectSymbol('.');
+            receiver = name;
+            name = tokenizer.identifier();
+            tokenizer.expectIdentifier();
+        }
+        int call = tree.add(NodeKind.CALL, 0, name, receiver, line, column);
+
+        tokenizer.expectSymbol('(');
+        if (!isSymbol(')')) {
+            tree.addChild(call, parseExpression());
+            while (isSymbol(',')) {
+                tokenizer.expectSymbol(',');
+                tree.addChild(call, parseExpression());
+            }
+        }
+        tokenizer.expectSymbol(')');
+        return call;
+    }
+
+    private boolean isKeyword(KeywordType... keywords) {
+        if (tokenizer.tokenType() != TokenType.KEYWORD) return false;
+        KeywordType keyword = tokenizer.keyword();
+        for (KeywordType candidate : keywords) {
+            if (keyword == candidate) return true;
+        }
+        return false;
+    }
+
+    private boolean isSymbol(char symbol) {
+        return tokenizer.tokenType() == TokenType.SYMBOL && tokenizer.symbol() == symbol;
+    }
+
+    private static boolean isOperator(char c) {
+        return c < 128 && OPERATORS[c];
+    }
+}
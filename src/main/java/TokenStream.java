@@ -0,0 +1,461 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * A ring buffer of pre-lexed tokens between a JackTokenizer and the CompilationEngine.
+ * Tokens are lexed ahead in batches and stored already classified, so the engine can
+ * look at the next few tokens with the peek methods without re-querying the tokenizer.
+ * In background mode a separate thread runs the tokenizer and fills the buffer while
+ * the engine consumes it; otherwise batches are lexed on demand in the caller's thread.
+ * The current-token methods mirror JackTokenizer's API.
+ */
+public class TokenStream {
+    private static final int CAPACITY = 1024;            // must be a power of two
+    private static final int MASK = CAPACITY - 1;
+    private static final int BATCH = 128;                // tokens lexed per refill
+    public static final int MAX_LOOKAHEAD = 64;
+
+    private final JackTokenizer tokenizer;
+    private final Thread lexer;
+    private final boolean timed;
+    private final TokenizeEvent event;
+
+    // Token slots, indexed by (token number & MASK)
+    private final TokenType[] types = new TokenType[CAPACITY];
+    private final KeywordType[] keywords = new KeywordType[CAPACITY];
+    private final int[] values = new int[CAPACITY];       // symbol char or integer value
+    private final String[] texts = new String[CAPACITY];  // identifier or string constant
+    private final int[] lines = new int[CAPACITY];
+    private final int[] columns = new int[CAPACITY];
+
+    // Producer side: tokens [0, published) are readable
+    private volatile long published;
+    private volatile boolean finished;
+    private volatile Throwable failure;
+    private volatile boolean producerWaiting;
+    private long written;
+    private volatile long lexNanos;
+
+    // Consumer side: the current token is number current (-1 before the first advance)
+    private long current = -1;
+    private boolean ended;  // Advanced past the last token, which stays current for line() and column()
+    private volatile long consumed;
+    private volatile boolean closed;
+
+    /**
+     * Creates a token stream over the given tokenizer.
+     * If background is true, lexing runs on its own thread.
+     */
+    public TokenStream(JackTokenizer tokenizer, boolean background) {
+        this(tokenizer, background, false);
+    }
+
+    /**
+     * Creates a token stream over the given tokenizer.
+     * If background is true, lexing runs on its own thread. If timed is true, the
+     * time spent lexing is measured, once per batch rather than once per token.
+     * Lexing is also timed while a flight recording has the TokenizeEvent enabled.
+     */
+    public TokenStream(JackTokenizer tokenizer, boolean background, boolean timed) {
+        this.tokenizer = tokenizer;
+        this.event = new TokenizeEvent();
+        event.begin();
+        this.timed = timed || event.isEnabled();
+        if (background) {
+            lexer = new Thread(this::runLexer, "jack-lexer");
+            lexer.setDaemon(true);
+            lexer.start();
+        } else {
+            lexer = null;
+        }
+    }
+
+    /**
+     * Returns the name of the file or in-memory source being tokenized.
+     */
+    public String sourceName() {
+        return tokenizer.sourceName();
+    }
+
+    /**
+     * Returns the size of the input, see JackTokenizer.sourceSize.
+     */
+    public long sourceSize() {
+        return tokenizer.sourceSize();
+    }
+
+    /**
+     * Returns the number of tokens lexed so far.
+     */
+    public long tokenCount() {
+        return published;
+    }
+
+    /**
+     * Returns the time spent lexing so far, in nanoseconds; 0 unless the stream is timed.
+     * In background mode this time overlaps with the consumer's.
+     */
+    public long lexNanos() {
+        return lexNanos;
+    }
+
+    public boolean hasMoreTokens() {
+        return available(current + 1);
+    }
+
+    /**
+     * Moves to the next token. Advancing past the last token moves to the end of the
+     * input, where tokenType() is null, so that the next expect method reports what
+     * was expected instead of the input just running out.
+     */
+    public void advance() throws IOException {
+        if (!hasMoreTokens()) {
+            if (ended) {
+                throw new IllegalStateException("Called advance at the end of the input");
+            }
+            ended = true;
+            return;
+        }
+        current++;
+        // Report progress to the producer once per batch rather than per token
+        if ((current & (BATCH - 1)) == 0) {
+            consumed = current;
+            if (producerWaiting) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the type of the current token, or null at the end of the input.
+     */
+    public TokenType tokenType() {
+        if (current < 0) {
+            throw new IllegalStateException("No current token");
+        }
+        return ended ? null : types[slot(current)];
+    }
+
+    public KeywordType keyword() {
+        if (tokenType() != TokenType.KEYWORD) {
+            throw new IllegalStateException("Current token is not a keyword");
+        }
+        return keywords[slot(current)];
+    }
+
+    public char symbol() {
+        if (tokenType() != TokenType.SYMBOL) {
+            throw new IllegalStateException("Current token is not a symbol");
+        }
+        return (char) values[slot(current)];
+    }
+
+    public int intVal() {
+        if (tokenType() != TokenType.INT_CONST) {
+            throw new IllegalStateException("Current token is not an integer constant");
+        }
+        return values[slot(current)];
+    }
+
+    public String stringVal() {
+        if (tokenType() != TokenType.STRING_CONST) {
+            throw new IllegalStateException("Current token is not a string constant");
+        }
+        return texts[slot(current)];
+    }
+
+    public String identifier() {
+        if (tokenType() != TokenType.IDENTIFIER) {
+            throw new IllegalStateException("Current token is not an identifier");
+        }
+        return texts[slot(current)];
+    }
+
+    /**
+     * Advances past the current token if it is one of the given keywords, else throws a CompileError.
+     */
+    public void expectKeyword(KeywordType... expected) throws IOException {
+        if (tokenType() == TokenType.KEYWORD) {
+            KeywordType keyword = keyword();
+            for (KeywordType candidate : expected) {
+                if (keyword == candidate) {
+                    advance();
+                    return;
+                }
+            }
+        }
+        StringBuilder keywords = new StringBuilder(expected.length == 1 ? "keyword " : "one of the keywords ");
+        for (int i = 0; i < expected.length; i++) {
+            keywords.append(i == 0 ? "'" : ", '").append(expected[i].spelling()).append('\'');
+        }
+        throw syntaxError(keywords.toString());
+    }
+
+    /**
+     * Advances past the current token if it is the given symbol, else throws a CompileError.
+     */
+    public void expectSymbol(char expected) throws IOException {
+        if (tokenType() != TokenType.SYMBOL || symbol() != expected) {
+            throw syntaxError("symbol '" + expected + "'");
+        }
+        advance();
+    }
+
+    /**
+     * Advances past the current token if it is an identifier, else throws a CompileError.
+     */
+    public void expectIdentifier() throws IOException {
+        if (tokenType() != TokenType.IDENTIFIER) {
+            throw syntaxError("identifier");
+        }
+        advance();
+    }
+
+    /**
+     * Advances past the current token if it is an integer constant, else throws a CompileError.
+     */
+    public void expectIntegerConstant() throws IOException {
+        if (tokenType() != TokenType.INT_CONST) {
+            throw syntaxError("integer constant");
+        }
+        advance();
+    }
+
+    /**
+     * Advances past the current token if it is a string constant, else throws a CompileError.
+     */
+    public void expectStringConstant() throws IOException {
+        if (tokenType() != TokenType.STRING_CONST) {
+            throw syntaxError("string constant");
+        }
+        advance();
+    }
+
+    /**
+     * Returns an error saying that the current token is not what the grammar expects here.
+     */
+    public CompileError syntaxError(String expected) {
+        return new CompileError(new Diagnostic(sourceName(), line(), column(), expected, describe()));
+    }
+
+    private String describe() {
+        TokenType type = tokenType();
+        if (type == null) {
+            return "end of file";
+        }
+        switch (type) {
+            case KEYWORD: return "keyword '" + keyword().spelling() + "'";
+            case SYMBOL: return "symbol '" + symbol() + "'";
+            case INT_CONST: return "integer constant " + intVal();
+            case STRING_CONST: return "string constant \"" + stringVal() + "\"";
+            default: return "identifier '" + identifier() + "'";
+        }
+    }
+
+    /**
+     * Returns the line of the current token, or 0 before the first advance.
+     * At the end of the input, it is the line of the last token.
+     */
+    public int line() {
+        return current < 0 ? 0 : lines[slot(current)];
+    }
+
+    /**
+     * Returns the column of the current token, or 0 before the first advance.
+     * At the end of the input, it is the column of the last token.
+     */
+    public int column() {
+        return current < 0 ? 0 : columns[slot(current)];
+    }
+
+    /**
+     * Returns the type of the token k positions after the current one (0 is the current
+     * token), or null if the input ends before it.
+     */
+    public TokenType peekType(int k) {
+        long index = lookahead(k);
+        return !ended && available(index) ? types[slot(index)] : null;
+    }
+
+    /**
+     * Returns the symbol k positions after the current one, or '\0' if that token is not a symbol.
+     */
+    public char peekSymbol(int k) {
+        return peekType(k) == TokenType.SYMBOL ? (char) values[slot(current + k)] : '\0';
+    }
+
+    /**
+     * Returns the keyword k positions after the current one, or null if that token is not a keyword.
+     */
+    public KeywordType peekKeyword(int k) {
+        return peekType(k) == TokenType.KEYWORD ? keywords[slot(current + k)] : null;
+    }
+
+    /**
+     * Stops the background lexer, if any, and releases the tokenizer.
+     */
+    public void close() throws IOException {
+        closed = true;
+        if (lexer != null) {
+            synchronized (this) {
+                notifyAll();
+            }
+        } else {
+            tokenizer.close();
+        }
+    }
+
+    private long lookahead(int k) {
+        if (k < 0 || k > MAX_LOOKAHEAD) {
+            throw new IllegalArgumentException("Lookahead out of range: " + k);
+        }
+        return current + k;
+    }
+
+    private static int slot(long index) {
+        return (int) (index & MASK);
+    }
+
+    /**
+     * Returns whether token number index exists, lexing or waiting for it as needed.
+     */
+    private boolean available(long index) {
+        if (index < published) return true;
+        if (lexer == null) {
+            while (index >= published && !finished) {
+                // Never overwrite the current token or anything the engine may still peek at
+                lexBatch(Math.min(written + BATCH, Math.max(current, 0) + CAPACITY - MAX_LOOKAHEAD));
+            }
+        } else if (!finished) {
+            awaitToken(index);
+        }
+        if (index < published) return true;
+        rethrowFailure();
+        return false;
+    }
+
+    private synchronized void awaitToken(long index) {
+        while (index >= published && !finished) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for tokens", e);
+            }
+        }
+    }
+
+    private void rethrowFailure() {
+        Throwable cause = failure;
+        if (cause == null) return;
+        if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+        if (cause instanceof Error) throw (Error) cause;
+        if (cause instanceof IOException) throw new UncheckedIOException((IOException) cause);
+        throw new IllegalStateException(cause);
+    }
+
+    /**
+     * Lexes tokens into free slots until the given token count is reached or the
+     * input ends, then publishes them.
+     */
+    private void lexBatch(long limit) {
+        long start = timed ? System.nanoTime() : 0;
+        boolean endOfInput = false;
+        Throwable error = null;
+        try {
+            while (written < limit) {
+                if (!tokenizer.hasMoreTokens()) {
+                    endOfInput = true;
+                    break;
+                }
+                tokenizer.advance();
+                store(slot(written));
+                written++;
+            }
+        } catch (Throwable t) {
+            error = t;
+        }
+        if (timed) {
+            lexNanos += System.nanoTime() - start;
+        }
+        // Publish the tokens before signalling the end, so a reader that sees
+        // finished also sees every token that was lexed
+        published = written;
+        if (error != null) {
+            failure = error;
+            finished = true;
+        } else if (endOfInput) {
+            finished = true;
+            commitEvent();
+        }
+    }
+
+    private void commitEvent() {
+        event.end();
+        if (event.shouldCommit()) {
+            event.source = tokenizer.sourceName();
+            event.tokens = written;
+            event.sourceSize = tokenizer.sourceSize();
+            event.lexTime = lexNanos;
+            event.tokensPerSecond = lexNanos > 0 ? written * 1_000_000_000L / lexNanos : 0;
+            event.commit();
+        }
+    }
+
+    private void store(int slot) {
+        TokenType type = tokenizer.tokenType();
+        types[slot] = type;
+        lines[slot] = tokenizer.line();
+        columns[slot] = tokenizer.column();
+        keywords[slot] = null;
+        texts[slot] = null;
+        values[slot] = 0;
+        if (type == null) return;
+        switch (type) {
+            case KEYWORD: keywords[slot] = tokenizer.keyword(); break;
+            case SYMBOL: values[slot] = tokenizer.symbol(); break;
+            case INT_CONST: values[slot] = tokenizer.intVal(); break;
+            case STRING_CONST: texts[slot] = tokenizer.stringVal(); break;
+            case IDENTIFIER: texts[slot] = tokenizer.identifier(); break;
+        }
+    }
+
+    private void runLexer() {
+        try {
+            while (!finished && !closed) {
+                awaitSpace();
+                if (closed) break;
+                // The consumer reports progress once per batch, so keep one batch of slack
+                lexBatch(Math.min(written + BATCH, consumed + CAPACITY - BATCH));
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        } finally {
+            finished = true;
+            synchronized (this) {
+                notifyAll();
+            }
+            try {
+                tokenizer.close();
+            } catch (IOException ignored) {
+                // Nothing useful to do once the consumer is gone
+            }
+        }
+    }
+
+    private synchronized void awaitSpace() {
+        producerWaiting = true;
+        try {
+            while (written + BATCH > consumed + CAPACITY - BATCH && !closed) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            closed = true;
+        } finally {
+            producerWaiting = false;
+        }
+    }
+}
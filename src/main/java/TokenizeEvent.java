@@ -0,0 +1,40 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Frequency;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder event for lexing one source, emitted by TokenStream once
+ * the input is exhausted. In background mode it is committed on the lexer thread.
+ * Its duration runs from the creation of the stream to the last token, so in
+ * foreground mode it includes the parsing interleaved with lexing; lexTime is the
+ * time spent in the tokenizer alone.
+ */
+@Name("jack.Tokenize")
+@Label("Tokenize")
+@Category("Jack Compiler")
+@Description("Lexing of one Jack source")
+public class TokenizeEvent extends Event {
+    @Label("Source")
+    String source;
+
+    @Label("Tokens")
+    long tokens;
+
+    @Label("Source Size")
+    @DataAmount
+    long sourceSize;
+
+    @Label("Lex Time")
+    @Timespan
+    long lexTime;
+
+    @Label("Throughput")
+    @Description("Tokens per second of lex time")
+    @Frequency
+    long tokensPerSecond;
+}
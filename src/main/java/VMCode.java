@@ -0,0 +1,247 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A compact, in-memory list of VM instructions.
+ * Each instruction takes three ints: the command, and two operands whose meaning
+ * depends on the command (segment and index for push/pop, a name from the string
+ * pool for labels, gotos, functions and calls, plus nLocals/nArgs for the latter two).
+ * Text is only produced when the code is rendered.
+ */
+public class VMCode {
+    private static final int STRIDE = 3;
+    private static final String INDENT = "    ";  // 4 spaces for indentation
+    private static final VMCommand[] COMMANDS = VMCommand.values();
+    private static final Segment[] SEGMENTS = Segment.values();
+    private static final byte[] INDENT_BYTES = INDENT.getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NEWLINE_BYTES = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    private static final byte[][] COMMAND_BYTES = new byte[COMMANDS.length][];
+    private static final byte[][] SEGMENT_BYTES = new byte[SEGMENTS.length][];
+
+    static {
+        for (VMCommand command : COMMANDS) {
+            COMMAND_BYTES[command.ordinal()] = command.text().getBytes(StandardCharsets.US_ASCII);
+        }
+        for (Segment segment : SEGMENTS) {
+            SEGMENT_BYTES[segment.ordinal()] = segment.text().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private int[] code;
+    private int size;
+    private String[] names;
+    private int nameCount;
+    private final Map<String, Integer> nameIds;
+
+    /**
+     * Creates an empty instruction list.
+     */
+    public VMCode() {
+        code = new int[256 * STRIDE];
+        names = new String[64];
+        nameIds = new HashMap<>();
+    }
+
+    /**
+     * Appends an instruction. For commands with a name operand, arg1 is a name id
+     * obtained from nameId.
+     */
+    public void add(VMCommand command, int arg1, int arg2) {
+        int offset = size * STRIDE;
+        if (offset + STRIDE > code.length) {
+            code = Arrays.copyOf(code, code.length * 2);
+        }
+        code[offset] = command.ordinal();
+        code[offset + 1] = arg1;
+        code[offset + 2] = arg2;
+        size++;
+    }
+
+    /**
+     * Appends instruction i of another instruction list, which may have its own name pool.
+     */
+    public void add(VMCode other, int i) {
+        VMCommand command = other.command(i);
+        int arg1 = command.hasName() ? nameId(other.name(i)) : other.arg1(i);
+        add(command, arg1, other.arg2(i));
+    }
+
+    /**
+     * Returns the pool id of the given label or function name, adding it if needed.
+     */
+    public int nameId(String name) {
+        Integer id = nameIds.get(name);
+        if (id != null) return id;
+        if (nameCount == names.length) {
+            names = Arrays.copyOf(names, names.length * 2);
+        }
+        names[nameCount] = name;
+        nameIds.put(name, nameCount);
+        return nameCount++;
+    }
+
+    /**
+     * Returns the number of instructions.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Drops every instruction from position newSize on.
+     */
+    public void truncate(int newSize) {
+        if (newSize < 0 || newSize > size) {
+            throw new IllegalArgumentException("Invalid size: " + newSize);
+        }
+        size = newSize;
+    }
+
+    /**
+     * Removes the instructions in [from, to), shifting the ones after them down.
+     */
+    public void delete(int from, int to) {
+        if (from < 0 || from > to || to > size) {
+            throw new IllegalArgumentException("Invalid range: " + from + ".." + to);
+        }
+        System.arraycopy(code, to * STRIDE, code, from * STRIDE, (size - to) * STRIDE);
+        size -= to - from;
+    }
+
+    public VMCommand command(int i) {
+        return COMMANDS[code[i * STRIDE]];
+    }
+
+    /**
+     * Returns the segment of push/pop instruction i.
+     */
+    public Segment segment(int i) {
+        return SEGMENTS[code[i * STRIDE + 1]];
+    }
+
+    /**
+     * Returns the label or function name of instruction i.
+     */
+    public String name(int i) {
+        return names[code[i * STRIDE + 1]];
+    }
+
+    public int arg1(int i) {
+        return code[i * STRIDE + 1];
+    }
+
+    /**
+     * Returns the index of a push/pop, or nLocals/nArgs of a function/call.
+     */
+    public int arg2(int i) {
+        return code[i * STRIDE + 2];
+    }
+
+    /**
+     * Renders the instructions as VM text, one per line.
+     */
+    public void writeTo(Appendable out) throws IOException {
+        for (int i = 0; i < size; i++) {
+            writeTo(out, i);
+        }
+    }
+
+    /**
+     * Renders instruction i as a line of VM text.
+     */
+    public void writeTo(Appendable out, int i) throws IOException {
+        VMCommand command = command(i);
+        switch (command) {
+            case PUSH:
+            case POP:
+                out.append(INDENT).append(command.text()).append(' ')
+                   .append(segment(i).text()).append(' ').append(Integer.toString(arg2(i)));
+                break;
+            case LABEL:
+                out.append("label ").append(name(i));
+                break;
+            case FUNCTION:
+                out.append("function ").append(name(i)).append(' ').append(Integer.toString(arg2(i)));
+                break;
+            case CALL:
+                out.append(INDENT).append("call ").append(name(i)).append(' ').append(Integer.toString(arg2(i)));
+                break;
+            case GOTO:
+            case IF_GOTO:
+                out.append(INDENT).append(command.text()).append(' ').append(name(i));
+                break;
+            default:
+                out.append(INDENT).append(command.text());
+                break;
+        }
+        out.append(System.lineSeparator());
+    }
+
+    /**
+     * Encodes the instructions as VM text straight into the given buffer.
+     * Commands, segments and numbers are ASCII, so no charset encoder is involved;
+     * label and function names are encoded as UTF-8, like VMWriter's files, once per name.
+     * Throws BufferOverflowException if the buffer is too small.
+     */
+    public void encodeTo(ByteBuffer out) {
+        byte[][] nameBytes = new byte[nameCount][];
+        for (int i = 0; i < size; i++) {
+            int offset = i * STRIDE;
+            int command = code[offset];
+            VMCommand vmCommand = COMMANDS[command];
+            if (vmCommand != VMCommand.LABEL && vmCommand != VMCommand.FUNCTION) {
+                out.put(INDENT_BYTES);
+            }
+            out.put(COMMAND_BYTES[command]);
+            switch (vmCommand) {
+                case PUSH:
+                case POP:
+                    out.put((byte) ' ').put(SEGMENT_BYTES[code[offset + 1]]).put((byte) ' ');
+                    putInt(out, code[offset + 2]);
+                    break;
+                case FUNCTION:
+                case CALL:
+                    out.put((byte) ' ').put(nameBytes(nameBytes, code[offset + 1])).put((byte) ' ');
+                    putInt(out, code[offset + 2]);
+                    break;
+                case LABEL:
+                case GOTO:
+                case IF_GOTO:
+                    out.put((byte) ' ').put(nameBytes(nameBytes, code[offset + 1]));
+                    break;
+                default:
+                    break;
+            }
+            out.put(NEWLINE_BYTES);
+        }
+    }
+
+    private byte[] nameBytes(byte[][] cache, int id) {
+        byte[] bytes = cache[id];
+        if (bytes == null) {
+            bytes = names[id].getBytes(StandardCharsets.UTF_8);
+            cache[id] = bytes;
+        }
+        return bytes;
+    }
+
+    private static void putInt(ByteBuffer out, int value) {
+        if (value < 0) {
+            // Negating Integer.MIN_VALUE overflows, so the digits are taken from the negative value
+            out.put((byte) '-');
+            if (value <= -10) {
+                putInt(out, -(value / 10));
+            }
+            out.put((byte) ('0' - value % 10));
+            return;
+        }
+        if (value >= 10) {
+            putInt(out, value / 10);
+        }
+        out.put((byte) ('0' + value % 10));
+    }
+}
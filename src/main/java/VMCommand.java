@@ -0,0 +1,57 @@
+public enum VMCommand {
+    PUSH("push"),
+    POP("pop"),
+    ADD("add"),
+    SUB("sub"),
+    NEG("neg"),
+    EQ("eq"),
+    GT("gt"),
+    LT("lt"),
+    AND("and"),
+    OR("or"),
+    NOT("not"),
+    LABEL("label"),
+    GOTO("goto"),
+    IF_GOTO("if-goto"),
+    FUNCTION("function"),
+    CALL("call"),
+    RETURN("return");
+
+    private final String text;
+
+    VMCommand(String text) {
+        this.text = text;
+    }
+
+    /**
+     * Returns the command name as it appears in VM code.
+     */
+    public String text() {
+        return text;
+    }
+
+    /**
+     * Returns whether the command takes a label or function name operand.
+     */
+    public boolean hasName() {
+        return this == LABEL || this == GOTO || this == IF_GOTO || this == FUNCTION || this == CALL;
+    }
+
+    /**
+     * Returns the arithmetic/logical command with the given VM name.
+     */
+    public static VMCommand arithmetic(String text) {
+        switch (text) {
+            case "add": return ADD;
+            case "sub": return SUB;
+            case "neg": return NEG;
+            case "eq": return EQ;
+            case "gt": return GT;
+            case "lt": return LT;
+            case "and": return AND;
+            case "or": return OR;
+            case "not": return NOT;
+            default: throw new IllegalArgumentException("Invalid arithmetic command: " + text);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder event for rendering and writing a class's VM code,
+ * emitted by VMWriter.close. Its duration covers the write only; the optimizer
+ * pass that precedes it is reported in optimizeTime.
+ */
+@Name("jack.VMWrite")
+@Label("VM Write")
+@Category("Jack Compiler")
+@Description("Rendering and writing of one class's VM code")
+public class VMWriteEvent extends Event {
+    @Label("Output")
+    @Description("Output file, or the kind of in-memory target")
+    String output;
+
+    @Label("Instructions")
+    int instructions;
+
+    @Label("Bytes Written")
+    @DataAmount
+    long bytesWritten;
+
+    @Label("Direct Output")
+    boolean directOutput;
+
+    @Label("Optimize Time")
+    @Timespan
+    long optimizeTime;
+}
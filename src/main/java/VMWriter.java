@@ -1,85 +1,282 @@
-import java.io.FileWriter;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
+/**
+ * Collects VM commands in a compact VMCode buffer and renders them as text
+ * only when the writer is closed, either through a Writer or, in direct mode,
+ * as bytes in a reusable direct ByteBuffer written with one channel write.
+ * Files are UTF-8 either way; only names can hold characters outside ASCII.
+ */
 public class VMWriter {
-    private PrintWriter writer;
-    private static final String INDENT = "    ";  // 4 spaces for indentation
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // One direct buffer per thread, grown on demand and reused across files
+    private static final ThreadLocal<ByteBuffer> DIRECT_BUFFERS =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE * 4));
+
+    private final String outputFile;
+    private final Writer target;
+    private VMCode code;
+    private final boolean directOutput;
+    private PeepholeOptimizer optimizer;
+    private int removedInstructions;
+    private long optimizeNanos;
+    private long writeNanos;
+    private long bytesWritten = -1;  // Known for direct output, looked up on demand otherwise
 
     /**
-     * Creates a new output .vm file and prepares it for writing.
+     * Creates a writer for the given output .vm file.
+     * The file is written when the writer is closed.
      */
     public VMWriter(String outputFile) throws IOException {
-        writer = new PrintWriter(new FileWriter(outputFile));
+        this(outputFile, false);
+    }
+
+    /**
+     * Creates a writer for the given output .vm file. If directOutput is true the
+     * file is written through a FileChannel from a direct buffer, bypassing the
+     * Writer and charset encoder stack.
+     */
+    public VMWriter(String outputFile, boolean directOutput) throws IOException {
+        this.outputFile = outputFile;
+        this.target = null;
+        this.code = new VMCode();
+        this.directOutput = directOutput;
+    }
+
+    /**
+     * Creates a writer that keeps the code in memory only.
+     * Once the writer is closed, code() returns the final, optimized code.
+     */
+    public VMWriter() {
+        this.outputFile = null;
+        this.target = null;
+        this.code = new VMCode();
+        this.directOutput = false;
+    }
+
+    /**
+     * Creates a writer that renders into the given Writer when closed.
+     * The Writer is flushed but left open.
+     */
+    public VMWriter(Writer target) {
+        this.outputFile = null;
+        this.target = target;
+        this.code = new VMCode();
+        this.directOutput = false;
+    }
+
+    /**
+     * Sets the optimizer that runs over the buffered code before it is written, or null for none.
+     */
+    public void setOptimizer(PeepholeOptimizer optimizer) {
+        this.optimizer = optimizer;
+    }
+
+    /**
+     * Returns how many instructions the optimizer removed when the writer was closed.
+     */
+    public int removedInstructions() {
+        return removedInstructions;
+    }
+
+    /**
+     * Returns the instructions written so far, or after close() the code as it was written out.
+     */
+    public VMCode code() {
+        return code;
     }
 
     /**
      * Writes a VM push command.
      */
     public void writePush(String segment, int index) {
-        writer.println(INDENT + "push " + segment + " " + index);
+        writePush(Segment.of(segment), index);
+    }
+
+    /**
+     * Writes a VM push command.
+     */
+    public void writePush(Segment segment, int index) {
+        code.add(VMCommand.PUSH, segment.ordinal(), index);
     }
 
     /**
      * Writes a VM pop command.
      */
     public void writePop(String segment, int index) {
-        writer.println(INDENT + "pop " + segment + " " + index);
+        writePop(Segment.of(segment), index);
+    }
+
+    /**
+     * Writes a VM pop command.
+     */
+    public void writePop(Segment segment, int index) {
+        code.add(VMCommand.POP, segment.ordinal(), index);
     }
 
     /**
      * Writes a VM arithmetic/logical command.
      */
     public void writeArithmetic(String command) {
-        writer.println(INDENT + command);
+        code.add(VMCommand.arithmetic(command), 0, 0);
     }
 
     /**
      * Writes a VM label command.
      */
     public void writeLabel(String label) {
-        writer.println("label " + label);
+        code.add(VMCommand.LABEL, code.nameId(label), 0);
     }
 
     /**
      * Writes a VM goto command.
      */
     public void writeGoto(String label) {
-        writer.println(INDENT + "goto " + label);
+        code.add(VMCommand.GOTO, code.nameId(label), 0);
     }
 
     /**
      * Writes a VM if-goto command.
      */
     public void writeIf(String label) {
-        writer.println(INDENT + "if-goto " + label);
+        code.add(VMCommand.IF_GOTO, code.nameId(label), 0);
     }
 
     /**
      * Writes a VM call command.
      */
     public void writeCall(String name, int nArgs) {
-        writer.println(INDENT + "call " + name + " " + nArgs);
+        code.add(VMCommand.CALL, code.nameId(name), nArgs);
     }
 
     /**
      * Writes a VM function command.
      */
     public void writeFunction(String name, int nLocals) {
-        writer.println("function " + name + " " + nLocals);
+        code.add(VMCommand.FUNCTION, code.nameId(name), nLocals);
+    }
+
+    /**
+     * Writes the VM commands that build a new String holding the given constant.
+     */
+    public void writeString(String value) {
+        writePush(Segment.CONSTANT, value.length());
+        writeCall("String.new", 1);
+        for (int i = 0; i < value.length(); i++) {
+            writePush(Segment.CONSTANT, value.charAt(i));
+            writeCall("String.appendChar", 2);
+        }
     }
 
     /**
      * Writes a VM return command.
      */
     public void writeReturn() {
-        writer.println(INDENT + "return");
+        code.add(VMCommand.RETURN, 0, 0);
+    }
+
+    /**
+     * Optimizes the buffered commands, if an optimizer is set, renders them and
+     * writes them to the output file or Writer.
+     */
+    public void close() throws IOException {
+        long start = System.nanoTime();
+        if (optimizer != null) {
+            VMCode optimized = optimizer.optimize(code);
+            removedInstructions = code.size() - optimized.size();
+            code = optimized;
+        }
+        long optimized = System.nanoTime();
+        optimizeNanos = optimized - start;
+        VMWriteEvent event = new VMWriteEvent();
+        event.begin();
+        write();
+        event.end();
+        writeNanos = System.nanoTime() - optimized;
+        if (event.shouldCommit()) {
+            event.output = outputFile != null ? outputFile : target != null ? "Writer" : "memory";
+            event.instructions = code.size();
+            event.bytesWritten = bytesWritten();
+            event.directOutput = directOutput;
+            event.optimizeTime = optimizeNanos;
+            event.commit();
+        }
+    }
+
+    /**
+     * Returns the time close() spent in the optimizer, in nanoseconds.
+     */
+    public long optimizeNanos() {
+        return optimizeNanos;
+    }
+
+    /**
+     * Returns the time close() spent rendering and writing the code, in nanoseconds.
+     */
+    public long writeNanos() {
+        return writeNanos;
     }
 
     /**
-     * Closes the output file.
+     * Returns the size of the written .vm file in bytes, or 0 if the code was not written to a file.
+     * Valid once the writer is closed.
      */
-    public void close() {
-        writer.close();
+    public long bytesWritten() {
+        if (bytesWritten < 0) {
+            bytesWritten = outputFile != null ? new File(outputFile).length() : 0;
+        }
+        return bytesWritten;
+    }
+
+    private void write() throws IOException {
+        if (target != null) {
+            code.writeTo(target);
+            target.flush();
+            return;
+        }
+        if (outputFile == null) {
+            return;
+        }
+        if (directOutput) {
+            writeDirect();
+            return;
+        }
+        Writer file = new OutputStreamWriter(new FileOutputStream(outputFile), StandardCharsets.UTF_8);
+        try (Writer writer = new BufferedWriter(file, BUFFER_SIZE)) {
+            code.writeTo(writer);
+        }
+    }
+
+    private void writeDirect() throws IOException {
+        ByteBuffer buffer = DIRECT_BUFFERS.get();
+        while (true) {
+            buffer.clear();
+            try {
+                code.encodeTo(buffer);
+                break;
+            } catch (BufferOverflowException e) {
+                buffer = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+                DIRECT_BUFFERS.set(buffer);
+            }
+        }
+        buffer.flip();
+        bytesWritten = buffer.limit();
+        try (FileChannel channel = FileChannel.open(Paths.get(outputFile),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
     }
 }
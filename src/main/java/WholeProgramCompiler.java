@@ -0,0 +1,239 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compiles the classes of a program together and leaves every subroutine that
+ * the program can never reach out of the .vm files. The classes are first compiled
+ * in memory; a call graph is then built from the call commands of every function,
+ * which are all static since Jack resolves method calls by the receiver's declared
+ * type, and walked from Main.main and from the OS functions that run before it:
+ * Sys.init, which the VM calls first, and the init functions of the OS classes,
+ * which Sys.init calls, for whichever of them the program itself defines. A
+ * program may bring its own Memory or Math while relying on the built-in Sys.
+ * Calls to classes outside the program, such as the built-in OS, are not followed.
+ * A class none of whose subroutines is reachable gets no .vm file at all.
+ */
+public class WholeProgramCompiler {
+    /** The function the program starts in, called by Sys.init. */
+    public static final String ENTRY_POINT = "Main.main";
+
+    /**
+     * The function the VM starts in and the OS initializers it calls, in that order;
+     * each is a root too when the program defines it.
+     */
+    public static final List<String> SYSTEM_ENTRY_POINTS =
+        List.of("Sys.init", "Memory.init", "Math.init", "Screen.init", "Output.init", "Keyboard.init");
+
+    private final CompilerOptions options;
+    private final int jobs;
+    private final List<String> entryPoints;
+    private int subroutines;
+    private int instructions;
+    private final List<String> removedSubroutines;
+    private int removedInstructions;
+    private final List<File> omittedFiles;
+
+    /**
+     * Creates a compiler that compiles the classes with the given options, using up
+     * to the given number of worker threads.
+     */
+    public WholeProgramCompiler(CompilerOptions options, int jobs) {
+        this.options = options;
+        this.jobs = jobs;
+        entryPoints = new ArrayList<>();
+        removedSubroutines = new ArrayList<>();
+        omittedFiles = new ArrayList<>();
+    }
+
+    /**
+     * Compiles the given files as one program and writes the reachable part of each
+     * class next to its source. Deletes the .vm file of a class with nothing reachable,
+     * so that no stale code from an earlier compile is loaded with the program.
+     * Throws IOException if no class defines Main.main.
+     */
+    public void compile(File[] jackFiles) throws IOException {
+        List<VMCode> classes = compileAll(jackFiles);
+
+        // Every function, by name: the class it is in and where its code starts and ends
+        Map<String, int[]> functions = new HashMap<>();
+        for (int c = 0; c < classes.size(); c++) {
+            VMCode code = classes.get(c);
+            int start = -1;
+            for (int i = 0; i <= code.size(); i++) {
+                if (i == code.size() || code.command(i) == VMCommand.FUNCTION) {
+                    if (start >= 0) {
+                        functions.put(code.name(start), new int[] {c, start, i});
+                    }
+                    start = i;
+                }
+            }
+            instructions += code.size();
+        }
+        subroutines = functions.size();
+        if (!functions.containsKey(ENTRY_POINT)) {
+            throw new IOException("No " + ENTRY_POINT + " in the program; it is where reachability starts");
+        }
+
+        // Reachable functions, marked class by class at their first instruction
+        List<boolean[]> reachable = new ArrayList<>(classes.size());
+        for (VMCode code : classes) {
+            reachable.add(new boolean[code.size()]);
+        }
+        Deque<int[]> pending = new ArrayDeque<>();
+        entryPoints.add(ENTRY_POINT);
+        for (String entryPoint : SYSTEM_ENTRY_POINTS) {
+            if (functions.containsKey(entryPoint)) {
+                entryPoints.add(entryPoint);
+            }
+        }
+        for (String entryPoint : entryPoints) {
+            mark(functions.get(entryPoint), reachable, pending);
+        }
+        while (!pending.isEmpty()) {
+            int[] function = pending.pop();
+            VMCode code = classes.get(function[0]);
+            for (int i = function[1]; i < function[2]; i++) {
+                if (code.command(i) == VMCommand.CALL) {
+                    int[] callee = functions.get(code.name(i));
+                    if (callee != null) {
+                        mark(callee, reachable, pending);
+                    }
+                }
+            }
+        }
+
+        for (int c = 0; c < classes.size(); c++) {
+            write(jackFiles[c], classes.get(c), reachable.get(c));
+        }
+    }
+
+    private static void mark(int[] function, List<boolean[]> reachable, Deque<int[]> pending) {
+        boolean[] marks = reachable.get(function[0]);
+        if (!marks[function[1]]) {
+            marks[function[1]] = true;
+            pending.push(function);
+        }
+    }
+
+    // Writes the reachable functions of one class, or deletes its .vm file if there are none
+    private void write(File jackFile, VMCode code, boolean[] reachable) throws IOException {
+        File outputFile = JackCompiler.outputFileFor(jackFile);
+        // Written the way compileFile writes a class, but with no optimizer: the code already ran through it
+        VMWriter writer = new VMWriter(outputFile.getPath(), options.isDirectOutput());
+        VMCode kept = writer.code();
+        boolean keep = false;
+        for (int i = 0; i < code.size(); i++) {
+            if (code.command(i) == VMCommand.FUNCTION) {
+                keep = reachable[i];
+                if (!keep) {
+                    removedSubroutines.add(code.name(i));
+                }
+            }
+            if (keep) {
+                kept.add(code, i);
+            } else {
+                removedInstructions++;
+            }
+        }
+
+        if (kept.size() == 0) {
+            omittedFiles.add(jackFile);
+            Files.deleteIfExists(outputFile.toPath());
+        } else {
+            writer.close();
+        }
+
+        // The class was compiled in memory, so its statistics are missing the write
+        CompileStats statistics = options.getStatistics();
+        FileStats compiled = statistics != null ? statistics.remove(jackFile.toString()) : null;
+        if (compiled != null) {
+            statistics.add(compiled.withOutput(kept.size(), kept.size() == 0 ? 0 : writer.bytesWritten(),
+                writer.writeNanos()));
+        }
+    }
+
+    private List<VMCode> compileAll(File[] jackFiles) throws IOException {
+        List<VMCode> classes = new ArrayList<>(jackFiles.length);
+        if (jobs <= 1 || jackFiles.length <= 1) {
+            for (File jackFile : jackFiles) {
+                classes.add(compileClass(jackFile));
+            }
+            return classes;
+        }
+        ExecutorService pool = Executors.newWorkStealingPool(Math.min(jobs, jackFiles.length));
+        try {
+            List<Future<VMCode>> results = new ArrayList<>(jackFiles.length);
+            for (File jackFile : jackFiles) {
+                results.add(pool.submit(() -> compileClass(jackFile)));
+            }
+            for (Future<VMCode> result : results) {
+                classes.add(JackCompiler.await(result));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return classes;
+    }
+
+    private VMCode compileClass(File jackFile) throws IOException {
+        VMWriter writer = new VMWriter();
+        new CompilationEngine(new JackTokenizer(jackFile), writer, options).compileClass();
+        return writer.code();
+    }
+
+    /**
+     * Returns the functions reachability started from: Main.main, then those of
+     * SYSTEM_ENTRY_POINTS the program defines. Valid once compile has returned.
+     */
+    public List<String> entryPoints() {
+        return entryPoints;
+    }
+
+    /**
+     * Returns the number of subroutines in the program. Valid once compile has returned.
+     */
+    public int subroutines() {
+        return subroutines;
+    }
+
+    /**
+     * Returns the names of the subroutines left out, in class and source order.
+     * Valid once compile has returned.
+     */
+    public List<String> removedSubroutines() {
+        return removedSubroutines;
+    }
+
+    /**
+     * Returns the number of VM instructions in the program before unreachable
+     * subroutines were left out. Valid once compile has returned.
+     */
+    public int instructions() {
+        return instructions;
+    }
+
+    /**
+     * Returns the number of VM instructions left out. Valid once compile has returned.
+     */
+    public int removedInstructions() {
+        return removedInstructions;
+    }
+
+    /**
+     * Returns the source files that got no .vm file because nothing in them is reachable.
+     * Valid once compile has returned.
+     */
+    public List<File> omittedFiles() {
+        return omittedFiles;
+    }
+}
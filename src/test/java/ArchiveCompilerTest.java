@@ -0,0 +1,115 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ArchiveCompilerTest {
+    private static final String MAIN = "class Main {\n"
+        + "    function void main() { do Output.printInt(1 + 2); return; }\n"
+        + "}\n";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void refusesToWriteOverTheInputArchive() throws IOException {
+        Path input = zip("corpus.zip", Map.of("Main/Main.jack", MAIN));
+        byte[] original = Files.readAllBytes(input);
+
+        IOException error = assertThrows(IOException.class, () -> compiler().compile(input, input));
+        assertTrue(error.getMessage().contains("is the input archive"), error.getMessage());
+        // Also when the output is named by another path to the same file
+        Path other = directory.resolve("sub/../corpus.zip");
+        Files.createDirectory(directory.resolve("sub"));
+        assertThrows(IOException.class, () -> compiler().compile(input, other));
+        assertArrayEquals(original, Files.readAllBytes(input));
+    }
+
+    @Test
+    void compilesEveryEntry() throws IOException {
+        Path input = zip("corpus.zip", Map.of("Main/Main.jack", MAIN, "Other/Main.jack", MAIN));
+        Path output = directory.resolve("corpus-vm.zip");
+
+        assertEquals(2, compiler().compile(input, output));
+
+        String expected = new InMemoryCompiler(new CompilerOptions()).compile(MAIN).toString();
+        assertEquals(Map.of("Main/Main.vm", expected, "Other/Main.vm", expected), unzip(output));
+    }
+
+    @Test
+    void writesEntriesInPathOrderPastTheCompileWindow() throws IOException {
+        Map<String, String> sources = new TreeMap<>();
+        for (int i = 0; i < 40; i++) {
+            sources.put(String.format("P%02d/Main.jack", i), MAIN.replace("1 + 2", Integer.toString(i)));
+        }
+        Path output = directory.resolve("corpus-vm.zip");
+
+        assertEquals(40, compiler().compile(zip("corpus.zip", sources), output));
+
+        Map<String, String> entries = unzip(output);
+        assertEquals(40, entries.size());
+        for (int i = 0; i < 40; i++) {
+            String code = entries.get(String.format("P%02d/Main.vm", i));
+            assertTrue(code.contains("push constant " + i + System.lineSeparator()), code);
+        }
+    }
+
+    @Test
+    void statisticsCountTheBytesWrittenToTheArchive() throws IOException {
+        Path input = zip("corpus.zip", Map.of("Main/Main.jack", MAIN, "Other/Main.jack", MAIN));
+        Path output = directory.resolve("corpus-vm.zip");
+        CompileStats stats = new CompileStats();
+        new ArchiveCompiler(new CompilerOptions().setStatistics(stats), 2, false, Deflater.DEFAULT_COMPRESSION)
+            .compile(input, output);
+
+        assertEquals(2, stats.files().size());
+        try (ZipFile zip = new ZipFile(output.toFile())) {
+            for (FileStats file : stats.files()) {
+                String name = file.file().substring(1).replace(".jack", ".vm");
+                assertEquals(zip.getEntry(name).getCompressedSize(), file.bytesWritten(), name);
+                assertTrue(file.bytesWritten() > 0);
+            }
+        }
+    }
+
+    private static ArchiveCompiler compiler() {
+        return new ArchiveCompiler(new CompilerOptions(), 2, false, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    private Path zip(String name, Map<String, String> entries) throws IOException {
+        Path archive = directory.resolve(name);
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+            for (Map.Entry<String, String> entry : new TreeMap<>(entries).entrySet()) {
+                zip.putNextEntry(new ZipEntry(entry.getKey()));
+                zip.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        return archive;
+    }
+
+    private static Map<String, String> unzip(Path archive) throws IOException {
+        Map<String, String> entries = new TreeMap<>();
+        try (ZipInputStream zip = new ZipInputStream(Files.newInputStream(archive))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                entries.put(entry.getName(), new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,99 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.jupiter.api.Test;
+
+class ClassSplitterTest {
+    @Test
+    void splitsConsecutiveClasses() throws IOException {
+        ClassSplitter splitter = splitter("class A {\n}\nclass B { field int x; }\n\nclass C {}");
+
+        assertEquals("class A {\n}", splitter.next());
+        assertEquals(1, splitter.startLine());
+        // Each text starts right after the previous class, on the line that class ended on
+        assertEquals("\nclass B { field int x; }", splitter.next());
+        assertEquals(2, splitter.startLine());
+        assertEquals("\n\nclass C {}", splitter.next());
+        assertEquals(3, splitter.startLine());
+        assertNull(splitter.next());
+    }
+
+    @Test
+    void bracesInCommentsAndStringsAreIgnored() throws IOException {
+        String first = "class A { // }\n"
+            + "  /* { } */ /** } */ function void f() {\n"
+            + "    do Output.printString(\"}}\"); do Output.printString(\"{\");\n"
+            + "    return; /* ** } */ }\n"
+            + "}";
+        ClassSplitter splitter = splitter(first + "\nclass B {}");
+
+        assertEquals(first, splitter.next());
+        assertEquals("\nclass B {}", splitter.next());
+        assertNull(splitter.next());
+    }
+
+    @Test
+    void divisionIsCodeEvenAtTheEndOfALine() throws IOException {
+        String first = "class A { function int f(int x) { return x /\n2; } }";
+        ClassSplitter splitter = splitter(first + "\nclass B { function int g(int y) { return y/{ }; } }\nclass C {}");
+
+        assertEquals(first, splitter.next());
+        assertEquals(1, splitter.startLine());
+        // A brace right after a '/' still counts
+        assertEquals("\nclass B { function int g(int y) { return y/{ }; } }", splitter.next());
+        assertEquals(2, splitter.startLine());
+        assertEquals("\nclass C {}", splitter.next());
+        assertEquals(3, splitter.startLine());
+    }
+
+    @Test
+    void trailingCommentsEndTheInput() throws IOException {
+        ClassSplitter splitter = splitter("class A {}\n// The end }\n/* { */\n  \n");
+
+        assertEquals("class A {}", splitter.next());
+        assertNull(splitter.next());
+    }
+
+    @Test
+    void classesSpanningReadBuffersAreSplitWhole() throws IOException {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            input.append("class C").append(i).append(" { /* } */ function void f() { return; } }\n");
+        }
+        ClassSplitter splitter = splitter(input.toString());
+
+        for (int i = 0; i < 2000; i++) {
+            String source = splitter.next();
+            assertEquals((i == 0 ? "" : "\n") + "class C" + i + " { /* } */ function void f() { return; } }", source);
+            assertEquals(Math.max(1, i), splitter.startLine());
+        }
+        assertNull(splitter.next());
+    }
+
+    @Test
+    void unmatchedClosingBraceIsLocatedInTheStream() throws IOException {
+        ClassSplitter splitter = splitter("class A {\n}\n  }\n");
+        splitter.next();
+
+        Diagnostic diagnostic = assertThrows(CompileError.class, splitter::next).diagnostic();
+        assertEquals("<stream>:3:3: error: Unmatched '}'", diagnostic.toString());
+    }
+
+    @Test
+    void unclosedClassIsLocatedAtItsStart() throws IOException {
+        ClassSplitter splitter = splitter("class A {\n}\n\n  class B {\n  function void f() {\n");
+        splitter.next();
+
+        Diagnostic diagnostic = assertThrows(CompileError.class, splitter::next).diagnostic();
+        assertEquals(4, diagnostic.line());
+        assertEquals(3, diagnostic.column());
+    }
+
+    private static ClassSplitter splitter(String input) {
+        return new ClassSplitter(new StringReader(input), "<stream>");
+    }
+}
@@ -0,0 +1,66 @@
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CompilationCacheTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void unchangedSourceAndOutputAreUpToDate() throws IOException {
+        File source = write("Main.jack", "class Main {}");
+        File output = write("Main.vm", "function Main.main 0");
+        record(source, output);
+
+        assertTrue(new CompilationCache(directory.toFile(), new CompilerOptions()).isUpToDate(source, output));
+    }
+
+    @Test
+    void changedSourceIsStale() throws IOException {
+        File source = write("Main.jack", "class Main {}");
+        File output = write("Main.vm", "function Main.main 0");
+        record(source, output);
+        write("Main.jack", "class Main { }");
+
+        assertFalse(new CompilationCache(directory.toFile(), new CompilerOptions()).isUpToDate(source, output));
+    }
+
+    @Test
+    void outputRewrittenSinceIsStale() throws IOException {
+        File source = write("Main.jack", "class Main {}");
+        File output = write("Main.vm", "function Main.main 0");
+        record(source, output);
+        // As a non-incremental compile with other options would leave it
+        write("Main.vm", "function Main.main 0\n    return");
+
+        assertFalse(new CompilationCache(directory.toFile(), new CompilerOptions()).isUpToDate(source, output));
+    }
+
+    @Test
+    void manifestForOtherOptionsIsIgnored() throws IOException {
+        File source = write("Main.jack", "class Main {}");
+        File output = write("Main.vm", "function Main.main 0");
+        record(source, output);
+
+        CompilerOptions peephole = new CompilerOptions().setPeepholeOptimizer(PeepholeOptimizer.withDefaultRules());
+        assertFalse(new CompilationCache(directory.toFile(), peephole).isUpToDate(source, output));
+    }
+
+    private void record(File source, File output) throws IOException {
+        CompilationCache cache = new CompilationCache(directory.toFile(), new CompilerOptions());
+        assertFalse(cache.isUpToDate(source, output));
+        cache.compiled(source, output);
+        cache.save();
+    }
+
+    private File write(String name, String content) throws IOException {
+        return Files.writeString(directory.resolve(name), content).toFile();
+    }
+}
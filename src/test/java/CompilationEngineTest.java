@@ -0,0 +1,82 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.Test;
+
+class CompilationEngineTest {
+    @Test
+    void missingTermIsASyntaxError() {
+        assertSyntaxError("class A {\n function void f() {\n var int x;\n let x = ;\n return;\n }\n}\n",
+            4, 10, "term", "symbol ';'");
+    }
+
+    @Test
+    void missingOperandIsASyntaxError() {
+        assertSyntaxError("class A {\n function void f() {\n var int x;\n let x = 1 + ;\n return;\n }\n}\n",
+            4, 14, "term", "symbol ';'");
+    }
+
+    @Test
+    void missingClosingBraceIsReportedAtTheEndOfFile() {
+        assertSyntaxError("class A {\n function void f() {\n return;\n }\n",
+            4, 2, "symbol '}'", "end of file");
+    }
+
+    @Test
+    void truncatedInputIsReportedAtTheEndOfFile() {
+        assertSyntaxError("class A {\n function void f() {\n return",
+            3, 2, "term", "end of file");
+        assertSyntaxError("class A {\n function void f() {\n do Output.printInt(",
+            3, 20, "term", "end of file");
+    }
+
+    @Test
+    void tokensAfterTheClassAreIgnored() throws IOException {
+        String source = "class A {\n function void f() {\n return;\n }\n}\n";
+        for (CompilerOptions options : modes()) {
+            InMemoryCompiler compiler = new InMemoryCompiler(options);
+            assertEquals(compiler.compile(source).toString(), compiler.compile(source + "}").toString());
+        }
+    }
+
+    @Test
+    void corpusMatchesTheReferenceOutput() throws IOException {
+        // The references were saved without a final line separator
+        InMemoryCompiler compiler = new InMemoryCompiler(new CompilerOptions());
+        assertEquals(reference("ConvertToBin/ConvertToBin.txt").replaceFirst("^// Compiled Main.jack:\n", ""),
+            normalize(compiler.compile(TestSources.bundled("ConvertToBin/Main.jack"))));
+        for (String name : new String[] {"Main", "Square", "SquareGame"}) {
+            assertEquals(reference("Square/" + name + ".vm"),
+                normalize(compiler.compile(TestSources.bundled("Square/" + name + ".jack"))), name);
+        }
+    }
+
+    private static String reference(String path) throws IOException {
+        return normalize(Files.readString(Paths.get("compareFiles", path)));
+    }
+
+    private static String normalize(CharSequence vmCode) {
+        return vmCode.toString().replace("\r\n", "\n").strip();
+    }
+
+    // Both modes report the same diagnostic
+    private static void assertSyntaxError(String source, int line, int column, String expected, String actual) {
+        for (CompilerOptions options : modes()) {
+            CompileError error = assertThrows(CompileError.class, () -> new InMemoryCompiler(options).compile(source));
+            Diagnostic diagnostic = error.diagnostic();
+            String mode = options.isSyntaxTree() ? "--ast" : "direct";
+            assertEquals(line, diagnostic.line(), mode + ": " + diagnostic);
+            assertEquals(column, diagnostic.column(), mode + ": " + diagnostic);
+            assertEquals(expected, diagnostic.expected(), mode + ": " + diagnostic);
+            assertEquals(actual, diagnostic.actual(), mode + ": " + diagnostic);
+        }
+    }
+
+    private static CompilerOptions[] modes() {
+        return new CompilerOptions[] {new CompilerOptions(), new CompilerOptions().setSyntaxTree(true)};
+    }
+}
@@ -0,0 +1,168 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CompileServerTest {
+    private static final String MAIN = "class Main {\n"
+        + "    function void main() { do Output.printInt(1 + 2); return; }\n"
+        + "}\n";
+
+    @TempDir
+    Path directory;
+
+    private Thread serverThread;
+
+    @AfterEach
+    void stopServer() throws InterruptedException {
+        if (serverThread != null) {
+            serverThread.interrupt();
+            serverThread.join(5000);
+        }
+    }
+
+    @Test
+    void refusesASocketAnotherServerIsListeningOn() throws Exception {
+        Path socket = directory.resolve("jackc.sock");
+        try (ServerSocketChannel running = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            running.bind(UnixDomainSocketAddress.of(socket));
+
+            IOException error = assertThrows(IOException.class, () -> new CompileServer(socket, new CompilerOptions()).run());
+            assertTrue(error.getMessage().contains("Another server"), error.getMessage());
+            assertTrue(Files.exists(socket), "the running server's socket was removed");
+        }
+    }
+
+    @Test
+    void refusesAPathThatIsNotASocket() throws Exception {
+        Path file = Files.writeString(directory.resolve("notes.txt"), "not a socket");
+
+        IOException error = assertThrows(IOException.class, () -> new CompileServer(file, new CompilerOptions()).run());
+        assertTrue(error.getMessage().contains("not a socket"), error.getMessage());
+        assertEquals("not a socket", Files.readString(file));
+    }
+
+    @Test
+    void replacesAStaleSocket() throws Exception {
+        Path socket = directory.resolve("jackc.sock");
+        // A server that died without removing its socket file
+        try (ServerSocketChannel dead = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            dead.bind(UnixDomainSocketAddress.of(socket));
+        }
+        assertTrue(Files.exists(socket));
+
+        start(new CompileServer(socket, new CompilerOptions()), socket);
+    }
+
+    @Test
+    void compilesASourceRequest() throws Exception {
+        Path socket = directory.resolve("jackc.sock");
+        start(new CompileServer(socket, new CompilerOptions()), socket);
+
+        StringWriter expected = new StringWriter();
+        new InMemoryCompiler(new CompilerOptions()).compile(MAIN, expected);
+        try (SocketChannel channel = connect(socket)) {
+            assertEquals(CompileProtocol.OK + expected, request(channel, CompileProtocol.SOURCE, MAIN));
+            // The connection stays open for further requests
+            String error = request(channel, CompileProtocol.SOURCE, "class Main { function void main() { let x = 1; return; } }");
+            assertTrue(error.startsWith(CompileProtocol.ERROR + "<request>:1:"), error);
+        }
+    }
+
+    @Test
+    void compilesAPathRequestInPlace() throws Exception {
+        Path socket = directory.resolve("jackc.sock");
+        Path project = Files.createDirectory(directory.resolve("project"));
+        Files.writeString(project.resolve("Main.jack"), MAIN);
+        start(new CompileServer(socket, new CompilerOptions()), socket);
+
+        try (SocketChannel channel = connect(socket)) {
+            assertEquals(CompileProtocol.OK + "Compiled: Main.jack\n",
+                request(channel, CompileProtocol.PATH, project.toString()));
+        }
+        StringWriter expected = new StringWriter();
+        new InMemoryCompiler(new CompilerOptions()).compile(MAIN, expected);
+        assertEquals(expected.toString(), Files.readString(project.resolve("Main.vm")));
+    }
+
+    @Test
+    void serializesPathRequestsForOneDirectory() throws Exception {
+        Path socket = directory.resolve("jackc.sock");
+        Path project = Files.createDirectory(directory.resolve("project"));
+        Files.writeString(project.resolve("Main.jack"), MAIN);
+        CompileServer server = new CompileServer(socket, new CompilerOptions());
+        start(server, socket);
+
+        ExecutorService clients = Executors.newFixedThreadPool(2);
+        try (SocketChannel first = connect(socket); SocketChannel second = connect(socket)) {
+            Future<String> blocked;
+            // Stands in for a PATH request that is still compiling into the directory
+            synchronized (server.directoryLock(project.toFile())) {
+                blocked = clients.submit(() -> request(first, CompileProtocol.PATH, project.toString()));
+                assertThrows(TimeoutException.class, () -> blocked.get(300, TimeUnit.MILLISECONDS));
+                assertFalse(Files.exists(project.resolve("Main.vm")));
+
+                // Other directories are not held up
+                Path other = Files.createDirectory(directory.resolve("other"));
+                Files.writeString(other.resolve("Main.jack"), MAIN);
+                Future<String> free = clients.submit(() -> request(second, CompileProtocol.PATH, other.toString()));
+                assertEquals(CompileProtocol.OK + "Compiled: Main.jack\n", free.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(CompileProtocol.OK + "Compiled: Main.jack\n", blocked.get(5, TimeUnit.SECONDS));
+            assertTrue(Files.exists(project.resolve("Main.vm")));
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    // Runs the server on its own thread and waits until it accepts connections
+    private void start(CompileServer server, Path socket) throws Exception {
+        serverThread = new Thread(() -> {
+            try {
+                server.run();
+            } catch (IOException e) {
+                // Interrupted while accepting
+            }
+        });
+        serverThread.start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            try {
+                connect(socket).close();
+                return;
+            } catch (IOException e) {
+                Thread.sleep(20);
+            }
+        }
+        throw new AssertionError("The server did not start listening on " + socket);
+    }
+
+    private static SocketChannel connect(Path socket) throws IOException {
+        return SocketChannel.open(UnixDomainSocketAddress.of(socket));
+    }
+
+    // Returns the response's status followed by its body
+    private static String request(SocketChannel channel, String command, String argument) throws IOException {
+        CompileProtocol.writeFrame(channel, command);
+        CompileProtocol.writeFrame(channel, argument);
+        return CompileProtocol.readFrame(channel) + CompileProtocol.readFrame(channel);
+    }
+}
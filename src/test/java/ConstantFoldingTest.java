@@ -0,0 +1,165 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Golden output of constant folding and strength reduction, each case next to the
+ * unfolded code it replaces. Where the code can be evaluated, both versions are
+ * also run for several values of y and must agree under 16-bit arithmetic.
+ */
+class ConstantFoldingTest {
+    private static final int[] Y_VALUES = {0, 1, -1, 7, -9, 1234, 32767, -32768};
+
+    @Test
+    void foldsMostNegativeValueAsNot() {
+        // 32768 is not a valid constant, so -32768 is written as ~32767
+        assertCompiles("-32767 - 1", plain(),
+            "push constant 32767\n neg\n push constant 1\n sub");
+        assertCompiles("-32767 - 1", folded(), "push constant 32767\n not");
+        assertCompiles("32767 + 1", folded(), "push constant 32767\n not");
+        assertSameValues("32767 + 1");
+    }
+
+    @Test
+    void foldsUnaryAndComparisons() {
+        assertCompiles("~0", plain(), "push constant 0\n not");
+        assertCompiles("~0", folded(), "push constant 1\n neg");
+        assertCompiles("3 < 5", plain(), "push constant 3\n push constant 5\n lt");
+        assertCompiles("3 < 5", folded(), "push constant 1\n neg");
+        assertCompiles("(2 * 3) = 6", folded(), "push constant 1\n neg");
+        assertSameValues("-(-5) + (~0) - (3 > 5)");
+    }
+
+    @Test
+    void leavesDivisionByZeroToMathDivide() {
+        String call = "push constant 7\n push constant 0\n call Math.divide 2";
+        assertCompiles("7 / 0", plain(), call);
+        assertCompiles("7 / 0", folded(), call);
+        assertCompiles("7 / 0", reduced(), call);
+    }
+
+    @Test
+    void reducesMultiplicationByZeroKeepingTheOperand() {
+        assertCompiles("y * 0", plain(), "push argument 0\n push constant 0\n call Math.multiply 2");
+        assertCompiles("y * 0", reduced(), "push argument 0\n push constant 0\n and");
+        assertSameValues("y * 0");
+        assertSameValues("0 * y");
+    }
+
+    @Test
+    void reducesMultiplicationAndDivisionByOneAndMinusOne() {
+        assertCompiles("y * 1", reduced(), "push argument 0");
+        assertCompiles("y * -1", reduced(), "push argument 0\n neg");
+        assertCompiles("y / -1", reduced(), "push argument 0\n neg");
+        assertSameValues("y * -1");
+        assertSameValues("y / -1");
+    }
+
+    @Test
+    void reducesMultiplicationToDoubleAndAdd() {
+        assertCompiles("y * 10", reduced(),
+            "push argument 0\n push argument 0\n add\n"
+            + "pop temp 2\n push temp 2\n push temp 2\n add\n push argument 0\n add\n"
+            + "pop temp 2\n push temp 2\n push temp 2\n add");
+        // An operand that is not a single push is evaluated once, into temp 1
+        assertCompiles("(y + 1) * 3", reduced(),
+            "push argument 0\n push constant 1\n add\n"
+            + "pop temp 1\n push temp 1\n push temp 1\n add\n push temp 1\n add");
+        for (String expression : new String[] {"y * 10", "(y + 1) * 3", "5 * y", "y * -6", "y * 2"}) {
+            assertSameValues(expression);
+        }
+    }
+
+    @Test
+    void keepsLongMultiplicationsAndOtherDivisionsAsCalls() {
+        // 32767 would need far more than MAX_REDUCED_LENGTH instructions
+        assertCompiles("y * 32767", reduced(), "push argument 0\n push constant 32767\n call Math.multiply 2");
+        assertCompiles("y / 4", reduced(), "push argument 0\n push constant 4\n call Math.divide 2");
+    }
+
+    private static CompilerOptions plain() {
+        return new CompilerOptions().setConstantFolding(false);
+    }
+
+    private static CompilerOptions folded() {
+        return new CompilerOptions();
+    }
+
+    private static CompilerOptions reduced() {
+        return new CompilerOptions().setStrengthReduction(true);
+    }
+
+    private static void assertCompiles(String expression, CompilerOptions options, String expected) {
+        assertEquals(VMText.normalize(expected), compile(expression, options), expression);
+    }
+
+    // Evaluates the plain and the optimized code, which must compute the same value
+    private static void assertSameValues(String expression) {
+        String plain = compile(expression, plain());
+        String optimized = compile(expression, reduced());
+        for (int y : Y_VALUES) {
+            assertEquals(evaluate(plain, y), evaluate(optimized, y), expression + " with y = " + y);
+        }
+    }
+
+    // Returns the VM code of "let x = expression;" without the final pop
+    private static String compile(String expression, CompilerOptions options) {
+        String source = "class Main { function int f(int y) { var int x; let x = " + expression + "; return x; } }";
+        String code;
+        try {
+            code = VMText.normalize(new InMemoryCompiler(options).compile(source).toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int start = code.indexOf('\n') + 1;
+        return code.substring(start, code.lastIndexOf("\npop local 0"));
+    }
+
+    // Runs straight-line arithmetic code with argument 0 = y, in 16-bit words
+    private static int evaluate(String code, int y) {
+        Deque<Integer> stack = new ArrayDeque<>();
+        int[] temp = new int[8];
+        for (String line : code.split("\n")) {
+            String[] words = line.split(" ");
+            switch (words[0]) {
+                case "push":
+                    int index = Integer.parseInt(words[2]);
+                    stack.push(words[1].equals("constant") ? index : words[1].equals("temp") ? temp[index] : y);
+                    break;
+                case "pop": temp[Integer.parseInt(words[2])] = stack.pop(); break;
+                case "neg": stack.push(word(-stack.pop())); break;
+                case "not": stack.push(word(~stack.pop())); break;
+                case "call": {
+                    int right = stack.pop();
+                    int left = stack.pop();
+                    stack.push(word(words[1].equals("Math.multiply") ? left * right : left / right));
+                    break;
+                }
+                default: {
+                    int right = stack.pop();
+                    int left = stack.pop();
+                    switch (words[0]) {
+                        case "add": stack.push(word(left + right)); break;
+                        case "sub": stack.push(word(left - right)); break;
+                        case "and": stack.push(left & right); break;
+                        case "or": stack.push(left | right); break;
+                        case "lt": stack.push(left < right ? -1 : 0); break;
+                        case "gt": stack.push(left > right ? -1 : 0); break;
+                        case "eq": stack.push(left == right ? -1 : 0); break;
+                        default: throw new IllegalArgumentException(line);
+                    }
+                }
+            }
+        }
+        return stack.pop();
+    }
+
+    private static int word(int value) {
+        return (short) value;
+    }
+}
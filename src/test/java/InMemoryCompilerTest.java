@@ -0,0 +1,57 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.jupiter.api.Test;
+
+class InMemoryCompilerTest {
+    private static final String A = "class A {\n    function void f() { do Output.printInt(1); return; }\n}";
+    private static final String B = "class B {\n    function int g(int x) { return x / 2; }\n}";
+
+    @Test
+    void streamFramesEveryClassWithAHeader() throws IOException {
+        InMemoryCompiler compiler = new InMemoryCompiler(new CompilerOptions());
+        StringWriter out = new StringWriter();
+
+        assertEquals(2, compiler.compileStream(new StringReader("// Two classes\n" + A + "\n\n" + B + "\n// The end\n"), out));
+
+        String separator = System.lineSeparator();
+        assertEquals("// ==> A.vm <==" + separator + compiler.compile(A)
+            + "// ==> B.vm <==" + separator + compiler.compile(B), out.toString());
+    }
+
+    @Test
+    void streamFlushesEachClassBeforeReadingTheNext() throws IOException {
+        InMemoryCompiler compiler = new InMemoryCompiler(new CompilerOptions());
+        StringWriter out = new StringWriter();
+        // Fails once A is complete, as a pipe would block, so A must already be written
+        StringReader in = new StringReader(A + "\nclass B {") {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                int read = super.read(buffer, offset, length);
+                if (read < 0) {
+                    throw new IOException("Input closed");
+                }
+                return read;
+            }
+        };
+
+        assertThrows(IOException.class, () -> compiler.compileStream(in, out));
+        assertEquals("// ==> A.vm <==" + System.lineSeparator() + compiler.compile(A), out.toString());
+    }
+
+    @Test
+    void errorsAreLocatedInTheWholeStream() {
+        InMemoryCompiler compiler = new InMemoryCompiler(new CompilerOptions());
+        String input = A + "\n\nclass C {\n    function void h() {\n        let y = 1;\n        return;\n    }\n}\n";
+
+        CompileError error = assertThrows(CompileError.class,
+            () -> compiler.compileStream(new StringReader(input), new StringWriter()));
+        assertEquals("<stream>", error.diagnostic().file());
+        assertEquals(7, error.diagnostic().line());
+        assertEquals(13, error.diagnostic().column());
+    }
+}
@@ -0,0 +1,44 @@
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class JackCompilerTest {
+    // The pool compileFiles uses, which wraps and copies the exceptions of its tasks
+    private final ExecutorService pool = Executors.newWorkStealingPool(2);
+
+    @AfterEach
+    void shutDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void awaitRethrowsAnIOException() {
+        IOException failure = new IOException("Cannot read Main.jack");
+        Future<Integer> result = pool.submit(() -> { throw failure; });
+
+        assertSame(failure, assertThrows(IOException.class, () -> JackCompiler.await(result)));
+    }
+
+    @Test
+    void awaitRethrowsACompileError() {
+        CompileError failure = new CompileError(new Diagnostic("Main.jack", 3, 5, "'}'", "end of file"));
+        Future<Integer> result = pool.submit(() -> { throw failure; });
+
+        assertSame(failure, assertThrows(CompileError.class, () -> JackCompiler.await(result)));
+    }
+
+    @Test
+    void awaitRethrowsOtherRuntimeExceptions() {
+        IllegalArgumentException failure = new IllegalArgumentException("Segment out of range");
+        Future<Integer> result = pool.submit(() -> { throw failure; });
+
+        assertSame(failure, assertThrows(IllegalArgumentException.class, () -> JackCompiler.await(result)));
+    }
+}
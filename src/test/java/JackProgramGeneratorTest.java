@@ -0,0 +1,59 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JackProgramGeneratorTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void sameSeedGivesTheSameProgram() throws IOException {
+        Map<String, String> first = generate(generator(42), "first");
+        Map<String, String> second = generate(generator(42), "second");
+
+        assertEquals(first, second);
+        assertNotEquals(first, generate(generator(43), "third"));
+    }
+
+    @Test
+    void generatedProgramsCompile() throws IOException {
+        for (long seed = 1; seed <= 5; seed++) {
+            Map<String, String> program = generate(generator(seed), "seed" + seed);
+            assertEquals(5, program.size());
+
+            // A compile error fails the test with its diagnostic
+            Map<String, CharSequence> vmCode = new InMemoryCompiler(new CompilerOptions()).compileAll(program, 2);
+            for (String name : program.keySet()) {
+                String className = name.substring(0, name.length() - ".jack".length());
+                assertTrue(vmCode.get(name).toString().contains("function " + className + "."), name);
+            }
+        }
+    }
+
+    private static JackProgramGenerator generator(long seed) {
+        return new JackProgramGenerator().setSeed(seed).setClasses(4).setSubroutines(6).setStrings(0.5);
+    }
+
+    // Returns the generated sources by file name
+    private Map<String, String> generate(JackProgramGenerator generator, String name) throws IOException {
+        Path output = directory.resolve(name);
+        generator.generate(output.toFile());
+        Map<String, String> sources = new TreeMap<>();
+        try (Stream<Path> files = Files.list(output)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                sources.put(file.getFileName().toString(), Files.readString(file));
+            }
+        }
+        return sources;
+    }
+}
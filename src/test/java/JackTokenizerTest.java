@@ -0,0 +1,52 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.jupiter.api.Test;
+
+class JackTokenizerTest {
+    private static final int COPIES = 200;
+
+    /**
+     * Tokens are slices of the source buffer and names are interned, so once the
+     * JIT has warmed up, scanning allocates next to nothing per token.
+     */
+    @Test
+    void scanningAllocatesAlmostNothingPerToken() throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        String source = TestSources.bundled("Square/Square.jack").repeat(COPIES);
+        for (int i = 0; i < 20; i++) {
+            countTokens(JackTokenizer.fromSource(source, "warmup"));
+        }
+
+        JackTokenizer tokenizer = JackTokenizer.fromSource(source, "Square.jack");
+        long before = threads.getCurrentThreadAllocatedBytes();
+        int tokens = countTokens(tokenizer);
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        assertTrue(tokens > 100_000, "tokens: " + tokens);
+        double perToken = (double) allocated / tokens;
+        assertTrue(perToken < 1.0, "allocated " + allocated + " bytes for " + tokens + " tokens");
+    }
+
+    @Test
+    void identifiersAreInterned() throws Exception {
+        JackTokenizer tokenizer = JackTokenizer.fromSource("x y x", "Names.jack");
+        tokenizer.advance();
+        String first = tokenizer.identifier();
+        tokenizer.advance();
+        tokenizer.advance();
+        assertEquals("x", first);
+        assertTrue(first == tokenizer.identifier());
+    }
+
+    private static int countTokens(JackTokenizer tokenizer) throws Exception {
+        int tokens = 0;
+        while (tokenizer.hasMoreTokens()) {
+            tokenizer.advance();
+            tokens++;
+        }
+        return tokens;
+    }
+}
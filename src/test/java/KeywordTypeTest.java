@@ -0,0 +1,51 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Locale;
+
+import org.junit.jupiter.api.Test;
+
+class KeywordTypeTest {
+    @Test
+    void lookupFindsEveryKeyword() {
+        for (KeywordType keyword : KeywordType.values()) {
+            char[] spelling = keyword.name().toLowerCase(Locale.ROOT).toCharArray();
+            assertEquals(keyword, KeywordType.lookup(spelling, 0, spelling.length));
+            assertEquals(new String(spelling), keyword.spelling());
+        }
+    }
+
+    @Test
+    void lookupRejectsIdentifiers() {
+        for (String name : new String[] {"Int", "iff", "x", "classes", "ınt", "thıs"}) {
+            assertNull(KeywordType.lookup(name.toCharArray(), 0, name.length()), name);
+        }
+    }
+
+    /**
+     * The lookup table is built when KeywordType is initialized, so it is loaded
+     * afresh, in its own class loader, while the default locale is Turkish.
+     */
+    @Test
+    void lookupIgnoresTheDefaultLocale() throws Exception {
+        Locale saved = Locale.getDefault();
+        Locale.setDefault(Locale.forLanguageTag("tr-TR"));
+        URL classes = KeywordType.class.getProtectionDomain().getCodeSource().getLocation();
+        try (URLClassLoader loader = new URLClassLoader(new URL[] {classes}, null)) {
+            Class<?> type = Class.forName("KeywordType", true, loader);
+            Method lookup = type.getMethod("lookup", char[].class, int.class, int.class);
+            Method spelling = type.getMethod("spelling");
+            for (KeywordType keyword : KeywordType.values()) {
+                char[] text = keyword.name().toLowerCase(Locale.ROOT).toCharArray();
+                Object found = lookup.invoke(null, text, 0, text.length);
+                assertEquals(keyword.name(), found != null ? ((Enum<?>) found).name() : null);
+                assertEquals(new String(text), spelling.invoke(found));
+            }
+        } finally {
+            Locale.setDefault(saved);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Each rule on its own, as an input/output pair of VM code, plus the cases a rule
+ * must leave alone.
+ */
+class PeepholeOptimizerTest {
+    @Test
+    void unreachableCode() {
+        assertRewrites(PeepholeOptimizer::unreachableCode,
+            "goto L1\n push constant 1\n pop local 0\n label L1\n return\n push constant 2\n function F.g 0",
+            "goto L1\n label L1\n return\n function F.g 0");
+    }
+
+    @Test
+    void gotoNextLabel() {
+        assertRewrites(PeepholeOptimizer::gotoNextLabel,
+            "goto L1\n label L2\n label L1\n return",
+            "label L2\n label L1\n return");
+        assertUnchanged(PeepholeOptimizer::gotoNextLabel, "goto L1\n label L2\n return\n label L1");
+    }
+
+    @Test
+    void invertedBranchAfterComparison() {
+        assertRewrites(PeepholeOptimizer::invertedBranch,
+            "push local 0\n push constant 5\n lt\n not\n if-goto L1\n goto L2\n label L1",
+            "push local 0\n push constant 5\n lt\n if-goto L2\n label L1");
+    }
+
+    @Test
+    void invertedBranchKeepsNonBooleanConditions() {
+        // "if (5) {} else {...}": not 5 is -6, still true, so the else branch must be skipped
+        assertUnchanged(PeepholeOptimizer::invertedBranch,
+            "push constant 5\n not\n if-goto L1\n goto L2\n label L1");
+        assertUnchanged(PeepholeOptimizer::invertedBranch,
+            "push local 0\n push local 1\n and\n not\n if-goto L1\n goto L2\n label L1");
+    }
+
+    @Test
+    void constantBranch() {
+        assertRewrites(PeepholeOptimizer::constantBranch, "push constant 0\n if-goto L1\n return", "return");
+        assertRewrites(PeepholeOptimizer::constantBranch, "push constant 1\n neg\n if-goto L1", "goto L1");
+        assertRewrites(PeepholeOptimizer::constantBranch, "push constant 7\n if-goto L1", "goto L1");
+        assertUnchanged(PeepholeOptimizer::constantBranch, "push local 0\n if-goto L1");
+    }
+
+    @Test
+    void constantNot() {
+        assertRewrites(PeepholeOptimizer::constantNot, "push constant 1\n neg\n not", "push constant 0");
+        assertUnchanged(PeepholeOptimizer::constantNot, "push constant 2\n neg\n not");
+    }
+
+    @Test
+    void doubleNegation() {
+        assertRewrites(PeepholeOptimizer::doubleNegation, "push local 0\n not\n not\n neg\n neg", "push local 0");
+        assertUnchanged(PeepholeOptimizer::doubleNegation, "push local 0\n not\n neg");
+    }
+
+    @Test
+    void negatedZero() {
+        assertRewrites(PeepholeOptimizer::negatedZero, "push constant 0\n neg", "push constant 0");
+        assertUnchanged(PeepholeOptimizer::negatedZero, "push constant 3\n neg");
+    }
+
+    @Test
+    void simpleArrayStore() {
+        assertRewrites(PeepholeOptimizer::simpleArrayStore,
+            "push local 1\n pop temp 0\n pop pointer 1\n push temp 0\n pop that 0",
+            "pop pointer 1\n push local 1\n pop that 0");
+        // The value reads THAT, which "pop pointer 1" would change under it
+        assertUnchanged(PeepholeOptimizer::simpleArrayStore,
+            "push that 0\n pop temp 0\n pop pointer 1\n push temp 0\n pop that 0");
+    }
+
+    @Test
+    void tempRoundTrip() {
+        assertRewrites(PeepholeOptimizer::tempRoundTrip, "push local 0\n pop temp 0\n push temp 0", "push local 0");
+        assertUnchanged(PeepholeOptimizer::tempRoundTrip, "pop temp 1\n push temp 1");
+    }
+
+    @Test
+    void defaultRulesReachAFixedPoint() {
+        String in = "push local 0\n push constant 0\n eq\n not\n if-goto L1\n goto L2\n label L1\n"
+            + " push constant 1\n neg\n not\n if-goto L3\n label L2\n return\n label L3\n return";
+        String out = "push local 0\n push constant 0\n eq\n if-goto L2\n label L1\n label L2\n return\n label L3\n return";
+        assertEquals(VMText.normalize(out),
+            VMText.render(PeepholeOptimizer.withDefaultRules().optimize(VMText.parse(in))));
+    }
+
+    private static void assertRewrites(PeepholeRule rule, String in, String out) {
+        assertEquals(VMText.normalize(out), VMText.render(new PeepholeOptimizer(List.of(rule)).optimize(VMText.parse(in))));
+    }
+
+    private static void assertUnchanged(PeepholeRule rule, String in) {
+        assertRewrites(rule, in, in);
+    }
+}
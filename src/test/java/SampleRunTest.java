@@ -0,0 +1,116 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class SampleRunTest {
+    // The OS multiplication, compiled like the samples so that their cost is counted
+    private static final String MATH = "class Math {\n"
+        + "    function int multiply(int x, int y) {\n"
+        + "        var int sum, bit;\n"
+        + "        let bit = 1;\n"
+        + "        while (~(bit = 0)) {\n"
+        + "            if (~((y & bit) = 0)) { let sum = sum + x; }\n"
+        + "            let x = x + x;\n"
+        + "            let bit = bit + bit;\n"
+        + "        }\n"
+        + "        return sum;\n"
+        + "    }\n"
+        + "}\n";
+
+    // Key codes returned by successive Keyboard.keyPressed calls: right, x, down, z, left, then q
+    private static final int[] KEYS = {132, 132, 0, 0, 0, 88, 0, 133, 133, 133, 0, 0, 90, 0, 130, 0, 0, 81};
+
+    @Test
+    void convertToBinWritesTheSameBitsWithFewerInstructions() throws IOException {
+        for (int value : new int[] {0, 1, 1234, 32767, -1, -32768}) {
+            Run plain = convertToBin(new CompilerOptions(), value);
+            Run reduced = convertToBin(new CompilerOptions().setStrengthReduction(true), value);
+
+            int[] bits = new int[16];
+            for (int i = 0; i < 16; i++) {
+                bits[i] = (value >> i) & 1;
+            }
+            assertEquals(Arrays.toString(bits), plain.output, "value " + value);
+            assertEquals(plain.output, reduced.output, "value " + value);
+            // mask * 2 no longer calls Math.multiply
+            assertTrue(reduced.executed < plain.executed, reduced.executed + " >= " + plain.executed);
+        }
+    }
+
+    @Test
+    void squareDrawsTheSameWithNoMoreInstructions() throws IOException {
+        Run plain = square(new CompilerOptions());
+        Run reduced = square(new CompilerOptions().setStrengthReduction(true));
+
+        assertTrue(plain.output.contains("drawRectangle"), plain.output);
+        assertEquals(plain.output, reduced.output);
+        assertTrue(reduced.executed <= plain.executed, reduced.executed + " > " + plain.executed);
+    }
+
+    // Converts RAM[8000] to bits in RAM[8001..8016]; the output is those bits
+    private static Run convertToBin(CompilerOptions options, int value) throws IOException {
+        VMInterpreter vm = load(options, "ConvertToBin/Main.jack");
+        vm.ram[8000] = value;
+        vm.call("Main.main");
+        return new Run(Arrays.toString(Arrays.copyOfRange(vm.ram, 8001, 8017)), vm.executed());
+    }
+
+    // Plays the keys; the output is the log of screen calls
+    private static Run square(CompilerOptions options) throws IOException {
+        VMInterpreter vm = load(options, "Square/Main.jack", "Square/Square.jack", "Square/SquareGame.jack");
+        List<String> screen = new ArrayList<>();
+        vm.define("Screen.setColor", (machine, args) -> {
+            screen.add("setColor " + args[0]);
+            return 0;
+        });
+        vm.define("Screen.drawRectangle", (machine, args) -> {
+            screen.add("drawRectangle " + Arrays.toString(args));
+            return 0;
+        });
+        int[] next = {0};
+        vm.define("Keyboard.keyPressed", (machine, args) -> next[0] < KEYS.length ? KEYS[next[0]++] : 0);
+        vm.define("Sys.wait", (machine, args) -> 0);
+        vm.call("Main.main");
+        assertEquals(KEYS.length, next[0]);
+        return new Run(String.join("\n", screen), vm.executed());
+    }
+
+    // Loads the sources compiled with the given options, over Math and a minimal Memory
+    private static VMInterpreter load(CompilerOptions options, String... paths) throws IOException {
+        VMInterpreter vm = new VMInterpreter();
+        vm.load(VMText.parse(VMText.normalize(new InMemoryCompiler(new CompilerOptions()).compile(MATH).toString())));
+        InMemoryCompiler compiler = new InMemoryCompiler(options);
+        for (String path : paths) {
+            vm.load(VMText.parse(VMText.normalize(compiler.compile(TestSources.bundled(path)).toString())));
+        }
+        int[] free = {2048};
+        vm.define("Memory.alloc", (machine, args) -> {
+            int block = free[0];
+            free[0] += args[0];
+            return block;
+        });
+        vm.define("Memory.deAlloc", (machine, args) -> 0);
+        vm.define("Memory.peek", (machine, args) -> machine.ram[args[0]]);
+        vm.define("Memory.poke", (machine, args) -> {
+            machine.ram[args[0]] = args[1];
+            return 0;
+        });
+        return vm;
+    }
+
+    private static final class Run {
+        final String output;
+        final long executed;
+
+        Run(String output, long executed) {
+            this.output = output;
+            this.executed = executed;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * The --ast mode must generate exactly the code of the direct mode.
+ */
+class SyntaxTreeTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void treeModeMatchesDirectModeOnTheCorpus() throws IOException {
+        for (String path : TestSources.CORPUS) {
+            assertSameCode(path, TestSources.bundled(path));
+        }
+    }
+
+    @Test
+    void treeModeMatchesDirectModeOnGeneratedPrograms() throws IOException {
+        // Large classes too, whose trees grow past what a thread keeps
+        new JackProgramGenerator().setSeed(7).setClasses(3).setSubroutines(12).setStrings(0.3)
+            .generate(directory.toFile());
+        new JackProgramGenerator().setSeed(8).setClasses(1).setClassSize(96 * 1024)
+            .generate(directory.resolve("large").toFile());
+        for (Path file : jackFiles()) {
+            assertSameCode(file.toString(), Files.readString(file));
+        }
+    }
+
+    private List<Path> jackFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.filter(path -> path.toString().endsWith(".jack")).sorted().forEach(files::add);
+        }
+        return files;
+    }
+
+    // Under every combination of the options that change the generated code
+    private static void assertSameCode(String name, String source) throws IOException {
+        for (int flags = 0; flags < 16; flags++) {
+            String direct = new InMemoryCompiler(options(flags)).compile(source).toString();
+            String tree = new InMemoryCompiler(options(flags).setSyntaxTree(true)).compile(source).toString();
+            assertEquals(direct, tree, name + " with option set " + flags);
+        }
+    }
+
+    private static CompilerOptions options(int flags) {
+        return new CompilerOptions()
+            .setConstantFolding((flags & 1) == 0)
+            .setStrengthReduction((flags & 2) != 0)
+            .setLiteralPooling((flags & 4) != 0)
+            .setPeepholeOptimizer((flags & 8) != 0 ? PeepholeOptimizer.withDefaultRules() : null);
+    }
+}
@@ -0,0 +1,31 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * The sample programs bundled under corpus/, shared with the benchmarks.
+ */
+final class TestSources {
+    /** Every bundled source, by path under corpus/. */
+    static final List<String> CORPUS = List.of(
+        "ConvertToBin/Main.jack", "Square/Main.jack", "Square/Square.jack", "Square/SquareGame.jack");
+
+    private TestSources() {
+    }
+
+    /**
+     * Returns one bundled source, by path under corpus/, such as "Square/Square.jack".
+     */
+    static String bundled(String path) {
+        try (InputStream in = TestSources.class.getResourceAsStream("/corpus/" + path)) {
+            if (in == null) {
+                throw new IllegalArgumentException("No bundled source: " + path);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Runs VM code on a small model of the Jack VM and counts the instructions executed,
+ * so that tests can compare what code generation options cost at run time.
+ * Words are 16 bits. Functions the loaded code calls but does not define, such as
+ * most of the OS, are supplied as natives and cost no instructions.
+ */
+final class VMInterpreter {
+    private static final int STACK_SIZE = 256;
+    private static final int STATIC_SIZE = 240;
+    private static final int MAX_DEPTH = 1000;
+
+    /**
+     * A function implemented in Java; it returns the function's value.
+     */
+    interface Native {
+        int call(VMInterpreter vm, int[] args);
+    }
+
+    /** The heap and screen, as read by this/that and by natives such as Memory.peek. */
+    final int[] ram = new int[32768];
+
+    private final Map<String, VMCode> functionCode = new HashMap<>();
+    private final Map<String, Integer> functionStart = new HashMap<>();
+    private final Map<String, Integer> labels = new HashMap<>();
+    private final Map<String, int[]> statics = new HashMap<>();
+    private final Map<String, Native> natives = new HashMap<>();
+    private final int[] temp = new int[8];
+    private long executed;
+    private int depth;
+
+    /**
+     * Adds the functions of one compiled class.
+     */
+    void load(VMCode code) {
+        String function = null;
+        for (int i = 0; i < code.size(); i++) {
+            if (code.command(i) == VMCommand.FUNCTION) {
+                function = code.name(i);
+                functionCode.put(function, code);
+                functionStart.put(function, i);
+            } else if (code.command(i) == VMCommand.LABEL) {
+                labels.put(function + "$" + code.name(i), i);
+            }
+        }
+    }
+
+    /**
+     * Supplies a function that no loaded class defines.
+     */
+    void define(String function, Native implementation) {
+        natives.put(function, implementation);
+    }
+
+    /**
+     * Returns the number of instructions executed so far; labels are not counted.
+     */
+    long executed() {
+        return executed;
+    }
+
+    /**
+     * Calls a function and returns its value.
+     */
+    int call(String function, int... args) {
+        Native implementation = natives.get(function);
+        if (implementation != null) {
+            return word(implementation.call(this, args));
+        }
+        VMCode code = functionCode.get(function);
+        if (code == null) {
+            throw new IllegalStateException("Undefined function: " + function);
+        }
+        if (++depth > MAX_DEPTH) {
+            throw new IllegalStateException("Call stack overflow in " + function);
+        }
+        try {
+            return run(function, code, functionStart.get(function), args);
+        } finally {
+            depth--;
+        }
+    }
+
+    private int run(String function, VMCode code, int start, int[] args) {
+        int[] locals = new int[code.arg2(start)];
+        int[] classStatics = statics.computeIfAbsent(function.substring(0, function.indexOf('.')),
+            className -> new int[STATIC_SIZE]);
+        int[] stack = new int[STACK_SIZE];
+        int sp = 0;
+        int thisPointer = 0;
+        int thatPointer = 0;
+        executed++;
+        for (int pc = start + 1; ; pc++) {
+            VMCommand command = code.command(pc);
+            if (command != VMCommand.LABEL) {
+                executed++;
+            }
+            switch (command) {
+                case PUSH: {
+                    int index = code.arg2(pc);
+                    int value;
+                    switch (code.segment(pc)) {
+                        case CONSTANT: value = index; break;
+                        case ARGUMENT: value = args[index]; break;
+                        case LOCAL: value = locals[index]; break;
+                        case STATIC: value = classStatics[index]; break;
+                        case THIS: value = ram[thisPointer + index]; break;
+                        case THAT: value = ram[thatPointer + index]; break;
+                        case POINTER: value = index == 0 ? thisPointer : thatPointer; break;
+                        default: value = temp[index]; break;
+                    }
+                    stack[sp++] = value;
+                    break;
+                }
+                case POP: {
+                    int index = code.arg2(pc);
+                    int value = stack[--sp];
+                    switch (code.segment(pc)) {
+                        case ARGUMENT: args[index] = value; break;
+                        case LOCAL: locals[index] = value; break;
+                        case STATIC: classStatics[index] = value; break;
+                        case THIS: ram[thisPointer + index] = value; break;
+                        case THAT: ram[thatPointer + index] = value; break;
+                        case POINTER:
+                            if (index == 0) {
+                                thisPointer = value;
+                            } else {
+                                thatPointer = value;
+                            }
+                            break;
+                        case TEMP: temp[index] = value; break;
+                        default: throw new IllegalStateException("Pop to constant in " + function);
+                    }
+                    break;
+                }
+                case ADD: sp--; stack[sp - 1] = word(stack[sp - 1] + stack[sp]); break;
+                case SUB: sp--; stack[sp - 1] = word(stack[sp - 1] - stack[sp]); break;
+                case NEG: stack[sp - 1] = word(-stack[sp - 1]); break;
+                case EQ: sp--; stack[sp - 1] = stack[sp - 1] == stack[sp] ? -1 : 0; break;
+                case GT: sp--; stack[sp - 1] = stack[sp - 1] > stack[sp] ? -1 : 0; break;
+                case LT: sp--; stack[sp - 1] = stack[sp - 1] < stack[sp] ? -1 : 0; break;
+                case AND: sp--; stack[sp - 1] &= stack[sp]; break;
+                case OR: sp--; stack[sp - 1] |= stack[sp]; break;
+                case NOT: stack[sp - 1] = word(~stack[sp - 1]); break;
+                case LABEL: break;
+                case GOTO: pc = label(function, code.name(pc)); break;
+                case IF_GOTO:
+                    if (stack[--sp] != 0) {
+                        pc = label(function, code.name(pc));
+                    }
+                    break;
+                case CALL: {
+                    int[] callArgs = new int[code.arg2(pc)];
+                    sp -= callArgs.length;
+                    System.arraycopy(stack, sp, callArgs, 0, callArgs.length);
+                    stack[sp++] = call(code.name(pc), callArgs);
+                    break;
+                }
+                case RETURN: return stack[sp - 1];
+                default: throw new IllegalStateException("No return at the end of " + function);
+            }
+        }
+    }
+
+    private int label(String function, String label) {
+        Integer target = labels.get(function + "$" + label);
+        if (target == null) {
+            throw new IllegalStateException("Undefined label " + label + " in " + function);
+        }
+        return target;
+    }
+
+    private static int word(int value) {
+        return (short) value;
+    }
+}
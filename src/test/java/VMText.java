@@ -0,0 +1,59 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Converts between VM text and VMCode, so that tests can state code as text.
+ */
+final class VMText {
+    private VMText() {
+    }
+
+    /**
+     * Parses VM commands, one per line; indentation and blank lines are ignored.
+     */
+    static VMCode parse(String text) {
+        VMWriter writer = new VMWriter();
+        for (String line : text.split("\n")) {
+            String[] words = line.trim().split("\\s+");
+            switch (words[0]) {
+                case "": break;
+                case "push": writer.writePush(words[1], Integer.parseInt(words[2])); break;
+                case "pop": writer.writePop(words[1], Integer.parseInt(words[2])); break;
+                case "label": writer.writeLabel(words[1]); break;
+                case "goto": writer.writeGoto(words[1]); break;
+                case "if-goto": writer.writeIf(words[1]); break;
+                case "call": writer.writeCall(words[1], Integer.parseInt(words[2])); break;
+                case "function": writer.writeFunction(words[1], Integer.parseInt(words[2])); break;
+                case "return": writer.writeReturn(); break;
+                default: writer.writeArithmetic(words[0]); break;
+            }
+        }
+        return writer.code();
+    }
+
+    /**
+     * Renders code as trimmed lines joined by "\n", the form parse accepts.
+     */
+    static String render(VMCode code) {
+        StringBuilder text = new StringBuilder();
+        try {
+            code.writeTo(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return normalize(text.toString());
+    }
+
+    /**
+     * Returns the given VM text with indentation, blank lines and line separators normalized.
+     */
+    static String normalize(String text) {
+        StringBuilder normalized = new StringBuilder();
+        for (String line : text.split("\\R")) {
+            if (line.isBlank()) continue;
+            if (normalized.length() > 0) normalized.append('\n');
+            normalized.append(line.trim());
+        }
+        return normalized.toString();
+    }
+}
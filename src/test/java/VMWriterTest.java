@@ -0,0 +1,53 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class VMWriterTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void bothOutputPathsWriteNamesAsUtf8() throws IOException {
+        byte[] written = write("Writer.vm", false);
+        byte[] direct = write("Direct.vm", true);
+
+        assertArrayEquals(written, direct);
+        String text = new String(direct, StandardCharsets.UTF_8);
+        assertEquals("function Größe.fläche 0", text.substring(0, text.indexOf(System.lineSeparator())));
+    }
+
+    @Test
+    void encodesTheMostNegativeIndexLikeTheText() throws IOException {
+        VMCode code = new VMCode();
+        for (int value : new int[] {Integer.MIN_VALUE, -10, -7, 0, 10, Integer.MAX_VALUE}) {
+            code.add(VMCommand.PUSH, Segment.CONSTANT.ordinal(), value);
+        }
+        StringBuilder text = new StringBuilder();
+        code.writeTo(text);
+        ByteBuffer encoded = ByteBuffer.allocate(1024);
+        code.encodeTo(encoded);
+
+        assertEquals(text.toString(), new String(encoded.array(), 0, encoded.position(), StandardCharsets.UTF_8));
+        assertEquals("push constant -2147483648", VMText.normalize(text.toString()).lines().findFirst().orElseThrow());
+    }
+
+    // Writes a function with non-ASCII names and returns the file's bytes
+    private byte[] write(String name, boolean directOutput) throws IOException {
+        Path file = directory.resolve(name);
+        VMWriter writer = new VMWriter(file.toString(), directOutput);
+        writer.writeFunction("Größe.fläche", 0);
+        writer.writeLabel("schleife_ü");
+        writer.writeCall("Größe.maß", 0);
+        writer.writeGoto("schleife_ü");
+        writer.close();
+        return Files.readAllBytes(file);
+    }
+}
@@ -0,0 +1,116 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class WholeProgramCompilerTest {
+    @TempDir
+    Path directory;
+
+    private File[] program;
+
+    // A project 12 style program that brings its own Sys and Memory classes
+    @BeforeEach
+    void writeProgram() throws IOException {
+        program = new File[] {
+            write("Main.jack", "class Main {\n"
+                + "    function void main() { do Main.used(); return; }\n"
+                + "    function void used() { return; }\n"
+                + "    function void unused() { return; }\n"
+                + "}\n"),
+            write("Memory.jack", "class Memory {\n"
+                + "    static int free;\n"
+                + "    function void init() { let free = 2048; return; }\n"
+                + "    function int alloc(int size) { return free; }\n"
+                + "}\n"),
+            write("Sys.jack", "class Sys {\n"
+                + "    function void init() { do Memory.init(); do Main.main(); do Sys.halt(); return; }\n"
+                + "    function void halt() { while (true) {} return; }\n"
+                + "}\n"),
+            write("Unused.jack", "class Unused {\n"
+                + "    function void run() { do Main.unused(); return; }\n"
+                + "}\n"),
+        };
+    }
+
+    @Test
+    void sysInitIsAnEntryPointWhenTheProgramDefinesIt() throws IOException {
+        WholeProgramCompiler compiler = new WholeProgramCompiler(new CompilerOptions(), 1);
+        compiler.compile(program);
+
+        assertEquals(List.of("Main.main", "Sys.init", "Memory.init"), compiler.entryPoints());
+        assertEquals(List.of("Main.unused", "Memory.alloc", "Unused.run"), compiler.removedSubroutines());
+        String sys = read("Sys.vm");
+        assertTrue(sys.contains("function Sys.init 0"), sys);
+        assertTrue(sys.contains("function Sys.halt 0"), sys);
+        String memory = read("Memory.vm");
+        assertTrue(memory.contains("function Memory.init 0"), memory);
+        assertFalse(memory.contains("function Memory.alloc"), memory);
+        assertFalse(Files.exists(directory.resolve("Unused.vm")));
+    }
+
+    @Test
+    void osInitFunctionsAreEntryPointsWithTheBuiltInSys() throws IOException {
+        // The built-in Sys.init calls Memory.init, which nothing in the program calls
+        WholeProgramCompiler compiler = new WholeProgramCompiler(new CompilerOptions(), 1);
+        compiler.compile(new File[] {program[0], program[1]});
+
+        assertEquals(List.of("Main.main", "Memory.init"), compiler.entryPoints());
+        assertEquals(List.of("Main.unused", "Memory.alloc"), compiler.removedSubroutines());
+        String memory = read("Memory.vm");
+        assertTrue(memory.contains("function Memory.init 0"), memory);
+    }
+
+    @Test
+    void mainMainIsTheOnlyEntryPointWithoutOsClasses() throws IOException {
+        WholeProgramCompiler compiler = new WholeProgramCompiler(new CompilerOptions(), 1);
+        compiler.compile(new File[] {program[0], program[3]});
+
+        assertEquals(List.of("Main.main"), compiler.entryPoints());
+        assertEquals(List.of("Main.unused", "Unused.run"), compiler.removedSubroutines());
+        assertFalse(Files.exists(directory.resolve("Unused.vm")));
+    }
+
+    @Test
+    void directOutputWritesTheSameCode() throws IOException {
+        new WholeProgramCompiler(new CompilerOptions(), 1).compile(program);
+        String written = read("Sys.vm") + read("Memory.vm") + read("Main.vm");
+
+        new WholeProgramCompiler(new CompilerOptions().setDirectOutput(true), 1).compile(program);
+
+        assertEquals(written, read("Sys.vm") + read("Memory.vm") + read("Main.vm"));
+    }
+
+    @Test
+    void statisticsCountTheCodeWritten() throws IOException {
+        CompileStats stats = new CompileStats();
+        WholeProgramCompiler compiler = new WholeProgramCompiler(new CompilerOptions().setStatistics(stats), 1);
+        compiler.compile(program);
+
+        assertEquals(program.length, stats.files().size());
+        for (FileStats file : stats.files()) {
+            File vmFile = JackCompiler.outputFileFor(new File(file.file()));
+            assertEquals(vmFile.length(), file.bytesWritten(), file.file());
+        }
+        FileStats unused = stats.files().get(stats.files().size() - 1);
+        assertEquals(0, unused.instructions());
+    }
+
+    private File write(String name, String source) throws IOException {
+        return Files.writeString(directory.resolve(name), source).toFile();
+    }
+
+    private String read(String name) throws IOException {
+        return new String(Files.readAllBytes(directory.resolve(name)), StandardCharsets.UTF_8);
+    }
+}